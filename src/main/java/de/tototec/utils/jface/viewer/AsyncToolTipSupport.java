@@ -0,0 +1,120 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.concurrent.Future;
+
+import org.eclipse.jface.viewers.CellLabelProvider;
+import org.eclipse.jface.viewers.ColumnViewer;
+import org.eclipse.jface.viewers.ColumnViewerToolTipSupport;
+import org.eclipse.jface.viewers.ViewerCell;
+import org.eclipse.jface.window.ToolTip;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Event;
+
+/**
+ * Tooltip support for column viewers, which also supports tooltip texts
+ * computed in the background, see
+ * {@link ViewerColumnBuilder#setAsyncToolTip(java.util.concurrent.ExecutorService, String, long)}.
+ * <p>
+ * While a tooltip text is computed, a placeholder is shown. When the
+ * computation is finished and the pointer is still over the same cell, the
+ * tooltip is shown again with the computed text. When the tooltip is hidden,
+ * e.g. because the pointer left the cell, a pending computation is cancelled.
+ * <p>
+ * For tooltip texts computed in the display thread, this behaves exactly like
+ * {@link ColumnViewerToolTipSupport}.
+ */
+public class AsyncToolTipSupport extends ColumnViewerToolTipSupport {
+
+	private static final String DATA_KEY = AsyncToolTipSupport.class.getName();
+
+	private final ColumnViewer viewer;
+
+	private Future<?> pending;
+
+	/**
+	 * @return The tooltip support of the given viewer. Repeated calls return
+	 *         the same instance.
+	 */
+	public static AsyncToolTipSupport forViewer(final ColumnViewer viewer) {
+		final Object toolTipSupport = viewer.getControl().getData(DATA_KEY);
+		if (toolTipSupport instanceof AsyncToolTipSupport) {
+			return (AsyncToolTipSupport) toolTipSupport;
+		}
+		final AsyncToolTipSupport newToolTipSupport = new AsyncToolTipSupport(viewer);
+		viewer.getControl().setData(DATA_KEY, newToolTipSupport);
+		return newToolTipSupport;
+	}
+
+	protected AsyncToolTipSupport(final ColumnViewer viewer) {
+		super(viewer, ToolTip.NO_RECREATE, false);
+		this.viewer = viewer;
+	}
+
+	/**
+	 * Set the currently pending computation, cancelling the previous one.
+	 */
+	void setPending(final Future<?> pending) {
+		cancelPending();
+		this.pending = pending;
+	}
+
+	/**
+	 * @return <code>true</code>, if the given computation is still the
+	 *         pending one.
+	 */
+	boolean isPending(final Future<?> future) {
+		return future != null && future == pending;
+	}
+
+	/**
+	 * Mark the given computation as finished, if it is still the pending one.
+	 *
+	 * @return <code>true</code>, if it was the pending one.
+	 */
+	boolean finishPending(final Future<?> future) {
+		if (isPending(future)) {
+			pending = null;
+			return true;
+		}
+		return false;
+	}
+
+	private void cancelPending() {
+		if (pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+	}
+
+	/**
+	 * Show the tooltip again, if the pointer is still over the cell of the
+	 * given element and label provider.
+	 */
+	void reshow(final Object element, final CellLabelProvider labelProvider) {
+		final Control control = viewer.getControl();
+		if (control.isDisposed()) {
+			return;
+		}
+		final Point location = control.toControl(control.getDisplay().getCursorLocation());
+		final Event event = new Event();
+		event.widget = control;
+		event.x = location.x;
+		event.y = location.y;
+		final Object area = getToolTipArea(event);
+		if (area instanceof ViewerCell) {
+			final ViewerCell cell = (ViewerCell) area;
+			if (cell.getElement() == element && viewer.getLabelProvider(cell.getColumnIndex()) == labelProvider) {
+				hide();
+				show(location);
+			}
+		}
+	}
+
+	@Override
+	protected void afterHideToolTip(final Event event) {
+		super.afterHideToolTip(event);
+		cancelPending();
+	}
+
+}
\ No newline at end of file
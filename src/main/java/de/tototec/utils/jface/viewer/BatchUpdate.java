@@ -0,0 +1,261 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jface.viewers.AbstractTableViewer;
+import org.eclipse.jface.viewers.AbstractTreeViewer;
+import org.eclipse.jface.viewers.ColumnViewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * A scope, in which changes of a viewer are collected and applied at once when
+ * the outermost scope is closed, with redraw suppressed in between.
+ * <p>
+ * Multiple updates of the same element are merged. Updated elements are
+ * relabeled, but sorted and filtered only once for all of them, with a single
+ * refresh without relabeling the other elements. Scopes can be nested, e.g.
+ * by methods that don't know whether their caller already opened one:
+ *
+ * <pre>
+ * try (BatchUpdate batch = BatchUpdate.begin(viewer)) {
+ * 	for (Row row : changedRows) {
+ * 		batch.update(row, null);
+ * 	}
+ * }
+ * </pre>
+ * <p>
+ * Only changes made through the scope are deferred; changes made directly on
+ * the viewer are applied at once, though not painted before the scope closes.
+ */
+public class BatchUpdate implements AutoCloseable {
+
+	private static final String DATA_KEY = BatchUpdate.class.getName();
+
+	private final ColumnViewer viewer;
+
+	private int depth;
+
+	/**
+	 * The updated elements with their changed properties, <code>null</code>
+	 * if all properties may have changed.
+	 */
+	private final Map<Object, Set<String>> updates = new IdentityHashMap<>();
+
+	/**
+	 * The added elements by parent, in order. Elements of tables are added to
+	 * the input.
+	 */
+	private final Map<Object, List<Object>> additions = new LinkedHashMap<>();
+
+	private final Set<Object> removals = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	private boolean refresh;
+
+	/**
+	 * Open a new scope for the given viewer, nested in an already open one.
+	 * Close it with {@link #close()}, best with try-with-resources.
+	 */
+	public static BatchUpdate begin(final ColumnViewer viewer) {
+		final Object existing = viewer.getControl().getData(DATA_KEY);
+		final BatchUpdate batchUpdate;
+		if (existing instanceof BatchUpdate) {
+			batchUpdate = (BatchUpdate) existing;
+		} else {
+			batchUpdate = new BatchUpdate(viewer);
+			viewer.getControl().setData(DATA_KEY, batchUpdate);
+		}
+		batchUpdate.open();
+		return batchUpdate;
+	}
+
+	private BatchUpdate(final ColumnViewer viewer) {
+		this.viewer = viewer;
+	}
+
+	private void open() {
+		if (depth++ == 0) {
+			viewer.getControl().setRedraw(false);
+		}
+	}
+
+	/**
+	 * Update the given element, like {@link ColumnViewer#update(Object, String[])}.
+	 */
+	public void update(final Object element, final String[] properties) {
+		if (updates.containsKey(element)) {
+			final Set<String> previous = updates.get(element);
+			if (previous != null) {
+				if (properties == null) {
+					updates.put(element, null);
+				} else {
+					previous.addAll(Arrays.asList(properties));
+				}
+			}
+		} else {
+			updates.put(element, properties == null ? null : new HashSet<>(Arrays.asList(properties)));
+		}
+	}
+
+	/**
+	 * Add the given elements to a table.
+	 */
+	public void add(final Object... elements) {
+		addChildren(null, elements);
+	}
+
+	/**
+	 * Add the given elements to the given parent element of a tree.
+	 */
+	public void addChildren(final Object parent, final Object... elements) {
+		List<Object> children = additions.get(parent);
+		if (children == null) {
+			children = new ArrayList<>();
+			additions.put(parent, children);
+		}
+		for (final Object element : elements) {
+			if (!removals.remove(element)) {
+				children.add(element);
+			}
+		}
+	}
+
+	/**
+	 * Remove the given elements.
+	 */
+	public void remove(final Object... elements) {
+		for (final Object element : elements) {
+			updates.remove(element);
+			boolean pending = false;
+			for (final List<Object> children : additions.values()) {
+				pending |= children.remove(element);
+			}
+			if (!pending) {
+				removals.add(element);
+			}
+		}
+	}
+
+	/**
+	 * Refresh the whole viewer instead of applying the single changes.
+	 */
+	public void refresh() {
+		refresh = true;
+	}
+
+	/**
+	 * Close this scope. Closing the outermost scope applies all changes.
+	 */
+	@Override
+	public void close() {
+		if (depth <= 0) {
+			throw new IllegalStateException("BatchUpdate was already closed");
+		}
+		if (--depth > 0) {
+			return;
+		}
+		final Control control = viewer.getControl();
+		control.setData(DATA_KEY, null);
+		if (control.isDisposed()) {
+			return;
+		}
+		try {
+			apply();
+		} finally {
+			control.setRedraw(true);
+		}
+	}
+
+	private void apply() {
+		final CellCache cellCache = CellCache.getExisting(viewer);
+		if (refresh) {
+			if (cellCache != null) {
+				cellCache.invalidateAll();
+			}
+			VirtualContentProvider.refreshViewer(viewer);
+			return;
+		}
+
+		if (!removals.isEmpty()) {
+			final Object[] removed = removals.toArray();
+			if (viewer instanceof AbstractTableViewer) {
+				((AbstractTableViewer) viewer).remove(removed);
+			} else if (viewer instanceof AbstractTreeViewer) {
+				((AbstractTreeViewer) viewer).remove(removed);
+			}
+			if (cellCache != null) {
+				for (final Object element : removed) {
+					cellCache.invalidate(element);
+				}
+			}
+		}
+
+		for (final Map.Entry<Object, List<Object>> entry : additions.entrySet()) {
+			if (entry.getValue().isEmpty()) {
+				continue;
+			}
+			final Object[] added = entry.getValue().toArray();
+			if (viewer instanceof AbstractTableViewer) {
+				((AbstractTableViewer) viewer).add(added);
+			} else if (viewer instanceof AbstractTreeViewer) {
+				((AbstractTreeViewer) viewer).add(entry.getKey() != null ? entry.getKey() : viewer.getInput(), added);
+			}
+		}
+
+		final ViewerComparator comparator = viewer.getComparator() instanceof ColumnSorter
+				&& ((ColumnSorter) viewer.getComparator()).isUnsorted() ? null : viewer.getComparator();
+		final ViewerFilter[] filters = viewer.getFilters();
+		boolean resort = false;
+		for (final Map.Entry<Object, Set<String>> entry : updates.entrySet()) {
+			final Object element = entry.getKey();
+			if (cellCache != null) {
+				cellCache.invalidate(element);
+			}
+			// relabel only, sorting and filtering happens once below
+			viewer.update(element, null);
+			resort = resort || affectsOrder(comparator, filters, element, entry.getValue());
+		}
+		if (resort) {
+			if (viewer.getContentProvider() instanceof VirtualContentProvider<?>) {
+				VirtualContentProvider.refreshViewer(viewer);
+			} else {
+				viewer.refresh(false);
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if changes of the given properties may change
+	 *         the sort position or filter state of the given element.
+	 */
+	private boolean affectsOrder(final ViewerComparator comparator, final ViewerFilter[] filters,
+			final Object element, final Set<String> properties) {
+		if (comparator == null && filters.length == 0) {
+			return false;
+		}
+		if (properties == null) {
+			return true;
+		}
+		for (final String property : properties) {
+			if (comparator != null && comparator.isSorterProperty(element, property)) {
+				return true;
+			}
+			for (final ViewerFilter filter : filters) {
+				if (filter.isFilterProperty(element, property)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+package de.tototec.utils.jface.viewer;
+
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontData;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * All attributes of a cell, produced in a single pass by a cell updater (see
+ * {@link ViewerColumnBuilder#setCellUpdater(Procedure2)}).
+ * <p>
+ * Attributes not set by the cell updater are computed as usual, by the label
+ * function and decorators of the column. The same instance is reused for all
+ * cells of a column, so it must not be kept by the cell updater.
+ */
+public final class CellAttributes {
+
+	boolean textSet;
+	String text;
+
+	boolean imageSet;
+	Image image;
+	ImageDescriptor imageDescriptor;
+
+	boolean fontSet;
+	Font font;
+	FontData fontData;
+
+	boolean foregroundSet;
+	int foreground;
+
+	boolean backgroundSet;
+	int background;
+
+	CellAttributes() {
+	}
+
+	void reset() {
+		textSet = false;
+		text = null;
+		imageSet = false;
+		image = null;
+		imageDescriptor = null;
+		fontSet = false;
+		font = null;
+		fontData = null;
+		foregroundSet = false;
+		backgroundSet = false;
+	}
+
+	public CellAttributes setText(final String text) {
+		this.textSet = true;
+		this.text = text;
+		return this;
+	}
+
+	public CellAttributes setImage(final Image image) {
+		this.imageSet = true;
+		this.image = image;
+		this.imageDescriptor = null;
+		return this;
+	}
+
+	/**
+	 * The image is created and cached by the image provider of the column.
+	 */
+	public CellAttributes setImage(final ImageDescriptor imageDescriptor) {
+		this.imageSet = true;
+		this.image = null;
+		this.imageDescriptor = imageDescriptor;
+		return this;
+	}
+
+	public CellAttributes setFont(final Font font) {
+		this.fontSet = true;
+		this.font = font;
+		this.fontData = null;
+		return this;
+	}
+
+	/**
+	 * The font is created and cached by the font provider of the column.
+	 */
+	public CellAttributes setFont(final FontData fontData) {
+		this.fontSet = true;
+		this.font = null;
+		this.fontData = fontData;
+		return this;
+	}
+
+	public CellAttributes setForeground(final RGB rgb) {
+		return setForeground(rgb == null ? IntColorDecorator.NONE
+				: IntColorDecorator.rgb(rgb.red, rgb.green, rgb.blue));
+	}
+
+	/**
+	 * @param rgb
+	 *            The packed RGB value or {@link IntColorDecorator#NONE}.
+	 */
+	public CellAttributes setForeground(final int rgb) {
+		this.foregroundSet = true;
+		this.foreground = rgb;
+		return this;
+	}
+
+	public CellAttributes setBackground(final RGB rgb) {
+		return setBackground(rgb == null ? IntColorDecorator.NONE
+				: IntColorDecorator.rgb(rgb.red, rgb.green, rgb.blue));
+	}
+
+	/**
+	 * @param rgb
+	 *            The packed RGB value or {@link IntColorDecorator#NONE}.
+	 */
+	public CellAttributes setBackground(final int rgb) {
+		this.backgroundSet = true;
+		this.background = rgb;
+		return this;
+	}
+
+}
@@ -0,0 +1,268 @@
+package de.tototec.utils.jface.viewer;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jface.viewers.ColumnViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Listener;
+
+/**
+ * Memoizes the computed attributes (text, image, font, colors and tooltip) of
+ * the cells of a viewer, so that updating unchanged rows does not need to
+ * access the model or run any label function or decorator.
+ * <p>
+ * The cache is keyed by element identity, holds its elements only weakly and
+ * is bounded to a maximal number of elements, evicting the least recently
+ * used ones.
+ * <p>
+ * Cached cells are only used, when a virtual table or tree materializes its
+ * items, e.g. while scrolling. Whenever the viewer updates or refreshes
+ * elements, e.g. with {@link ColumnViewer#update(Object, String[])} or
+ * {@link ColumnViewer#refresh(Object)}, their cells are computed again and
+ * cached anew. Thus the cache has no effect on viewers without
+ * {@link SWT#VIRTUAL}. Elements, which changed without an update of the
+ * viewer, can be invalidated with {@link #invalidate(Object)}.
+ * <p>
+ * Enable it for a column with {@link ViewerColumnBuilder#setCellCache(boolean)}.
+ * All columns of a viewer share the same cache, see
+ * {@link #forViewer(ColumnViewer)}.
+ */
+public class CellCache {
+
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	private static final String DATA_KEY = CellCache.class.getName();
+
+	private final ColumnViewer viewer;
+
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+	/**
+	 * Cached values of each registered slot by element.
+	 */
+	private final Map<Object, Object[]> cache = new LinkedHashMap<Object, Object[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Object, Object[]> eldest) {
+			return size() > maxSize;
+		}
+	};
+
+	/**
+	 * Reused to look up elements without allocation.
+	 */
+	private final LookupKey lookupKey = new LookupKey();
+
+	private int maxSize = DEFAULT_MAX_SIZE;
+
+	private int slots;
+
+	/**
+	 * <code>true</code> while the viewer materializes an item.
+	 */
+	private boolean materializing;
+
+	/**
+	 * @return The cell cache of the given viewer. Repeated calls return the
+	 *         same instance.
+	 */
+	public static CellCache forViewer(final ColumnViewer viewer) {
+		final Object cellCache = viewer.getControl().getData(DATA_KEY);
+		if (cellCache instanceof CellCache) {
+			return (CellCache) cellCache;
+		}
+		final CellCache newCellCache = new CellCache(viewer);
+		viewer.getControl().setData(DATA_KEY, newCellCache);
+		return newCellCache;
+	}
+
+	/**
+	 * @return The cell cache of the given viewer or <code>null</code>, if it
+	 *         has none.
+	 */
+	static CellCache getExisting(final ColumnViewer viewer) {
+		final Object cellCache = viewer.getControl().getData(DATA_KEY);
+		return cellCache instanceof CellCache ? (CellCache) cellCache : null;
+	}
+
+	private CellCache(final ColumnViewer viewer) {
+		this.viewer = viewer;
+		final Control control = viewer.getControl();
+		if ((control.getStyle() & SWT.VIRTUAL) != 0) {
+			// filters run before the listener of the viewer, own listeners after it
+			final Display display = control.getDisplay();
+			final Listener filter = event -> {
+				if (event.widget == control) {
+					materializing = true;
+				}
+			};
+			display.addFilter(SWT.SetData, filter);
+			control.addListener(SWT.SetData, event -> materializing = false);
+			control.addDisposeListener(event -> display.removeFilter(SWT.SetData, filter));
+		}
+	}
+
+	/**
+	 * @return <code>true</code> while the viewer materializes an item, in
+	 *         contrast to updating or refreshing elements.
+	 */
+	boolean isMaterializing() {
+		return materializing;
+	}
+
+	/**
+	 * Set the maximal number of elements, whose cells are cached.
+	 */
+	public void setMaxSize(final int maxSize) {
+		this.maxSize = maxSize;
+		if (cache.size() > maxSize) {
+			invalidateAll();
+		}
+	}
+
+	/**
+	 * Invalidate the cells of the given element.
+	 */
+	public void invalidate(final Object element) {
+		expunge();
+		cache.remove(lookupKey.of(element));
+		lookupKey.clear();
+	}
+
+	/**
+	 * Invalidate all cells.
+	 */
+	public void invalidateAll() {
+		cache.clear();
+		expunge();
+	}
+
+	/**
+	 * Invalidates the cells of the given element and calls
+	 * {@link ColumnViewer#update(Object, String[])}.
+	 */
+	public void update(final Object element, final String[] properties) {
+		invalidate(element);
+		viewer.update(element, properties);
+	}
+
+	/**
+	 * Invalidates the cells of the given element and calls
+	 * {@link ColumnViewer#refresh(Object)}.
+	 * <p>
+	 * If the element is the input of the viewer, all cells are invalidated.
+	 */
+	public void refresh(final Object element) {
+		if (element == viewer.getInput()) {
+			invalidateAll();
+		} else {
+			invalidate(element);
+		}
+		viewer.refresh(element);
+	}
+
+	/**
+	 * Invalidates all cells and calls {@link ColumnViewer#refresh()}.
+	 */
+	public void refresh() {
+		invalidateAll();
+		viewer.refresh();
+	}
+
+	/**
+	 * Register a new slot, e.g. for a column.
+	 */
+	int register() {
+		return slots++;
+	}
+
+	Object get(final Object element, final int slot) {
+		final Object[] values = cache.get(lookupKey.of(element));
+		lookupKey.clear();
+		return values == null || slot >= values.length ? null : values[slot];
+	}
+
+	void put(final Object element, final int slot, final Object value) {
+		expunge();
+		Object[] values = cache.get(lookupKey.of(element));
+		lookupKey.clear();
+		if (values == null) {
+			values = new Object[slots];
+			cache.put(new ElementKey(element, queue), values);
+		} else if (slot >= values.length) {
+			final Object[] newValues = new Object[slots];
+			System.arraycopy(values, 0, newValues, 0, values.length);
+			values = newValues;
+			cache.put(new ElementKey(element, queue), values);
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * Remove the entries of garbage collected elements.
+	 */
+	private void expunge() {
+		Object key;
+		while ((key = queue.poll()) != null) {
+			cache.remove(key);
+		}
+	}
+
+	private static final class ElementKey extends WeakReference<Object> {
+		private final int hash;
+
+		ElementKey(final Object element, final ReferenceQueue<Object> queue) {
+			super(element, queue);
+			this.hash = System.identityHashCode(element);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj instanceof ElementKey) {
+				final Object element = get();
+				return element != null && element == ((ElementKey) obj).get();
+			}
+			return false;
+		}
+	}
+
+	private static final class LookupKey {
+		private Object element;
+		private int hash;
+
+		LookupKey of(final Object element) {
+			this.element = element;
+			this.hash = System.identityHashCode(element);
+			return this;
+		}
+
+		void clear() {
+			this.element = null;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof ElementKey && ((ElementKey) obj).get() == element;
+		}
+	}
+
+}
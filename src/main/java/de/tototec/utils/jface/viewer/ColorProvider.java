@@ -1,14 +1,24 @@
 package de.tototec.utils.jface.viewer;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Tree;
+import org.eclipse.swt.widgets.TreeItem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,12 +26,52 @@ public class ColorProvider implements Function<RGB, Color> {
 
 	private final Logger log = LoggerFactory.getLogger(ColorProvider.class);
 
-	private final Map<RGB, Color> colorCache = new LinkedHashMap<>();
+	/**
+	 * In access order, least recently used first.
+	 */
+	private final Map<RGB, Color> colorCache = new LinkedHashMap<>(16, 0.75f, true);
 
 	private final Control owner;
 
+	private final int maxSize;
+
+	private final int quantizationBits;
+
 	public ColorProvider(final Control owner) {
+		this(owner, 0, 8);
+	}
+
+	/**
+	 * Create a color provider with a bounded cache.
+	 * <p>
+	 * If the cache grows beyond <code>maxSize</code>, the least recently used
+	 * colors are evicted and disposed. Colors still used by an item of the
+	 * owner {@link Table} or {@link Tree} are kept, so the cache may
+	 * temporarily hold more colors.
+	 * <p>
+	 * With quantization, each color channel is reduced to the given number of
+	 * bits before the color is looked up, so that similar colors, e.g. of a
+	 * gradient, map to the same color of a smaller palette.
+	 *
+	 * @param owner
+	 *            The owner control. All colors are disposed together with it.
+	 * @param maxSize
+	 *            The maximal number of cached colors, or <code>0</code> for
+	 *            an unbounded cache.
+	 * @param quantizationBits
+	 *            The bits per channel, between <code>1</code> and
+	 *            <code>8</code>. <code>8</code> disables quantization.
+	 */
+	public ColorProvider(final Control owner, final int maxSize, final int quantizationBits) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("maxSize must not be negative");
+		}
+		if (quantizationBits < 1 || quantizationBits > 8) {
+			throw new IllegalArgumentException("quantizationBits must be between 1 and 8");
+		}
 		this.owner = owner;
+		this.maxSize = maxSize;
+		this.quantizationBits = quantizationBits;
 		owner.addDisposeListener(new DisposeListener() {
 			@Override
 			public void widgetDisposed(final DisposeEvent arg0) {
@@ -39,11 +89,15 @@ public class ColorProvider implements Function<RGB, Color> {
 		if (rgb == null) {
 			return null;
 		} else {
-			final Color cached = colorCache.get(rgb);
+			final RGB key = quantize(rgb);
+			final Color cached = colorCache.get(key);
 			if (cached == null) {
-				log.debug("Creating color {}", rgb);
-				final Color color = new Color(owner.getDisplay(), rgb);
-				colorCache.put(rgb, color);
+				log.debug("Creating color {}", key);
+				final Color color = new Color(owner.getDisplay(), key);
+				colorCache.put(key, color);
+				if (maxSize > 0 && colorCache.size() > maxSize) {
+					evict();
+				}
 				return color;
 			} else {
 				return cached;
@@ -51,4 +105,105 @@ public class ColorProvider implements Function<RGB, Color> {
 		}
 	}
 
+	private RGB quantize(final RGB rgb) {
+		if (quantizationBits == 8) {
+			return rgb;
+		}
+		return new RGB(quantize(rgb.red), quantize(rgb.green), quantize(rgb.blue));
+	}
+
+	/**
+	 * Keep the upper bits of the channel and repeat them in the lower bits,
+	 * so that the full range from <code>0</code> to <code>255</code> is
+	 * preserved.
+	 */
+	private int quantize(final int channel) {
+		final int mask = (0xff << (8 - quantizationBits)) & 0xff;
+		int result = channel & mask;
+		for (int shift = quantizationBits; shift < 8; shift += quantizationBits) {
+			result |= (channel & mask) >> shift;
+		}
+		return result;
+	}
+
+	/**
+	 * Evict the least recently used colors, down to three quarters of the
+	 * maximal size. The items of the owner are scanned only once per
+	 * eviction.
+	 */
+	private void evict() {
+		final int evictCount = colorCache.size() - maxSize * 3 / 4;
+		final List<RGB> candidates = new ArrayList<>(evictCount);
+		final Iterator<RGB> it = colorCache.keySet().iterator();
+		while (candidates.size() < evictCount && it.hasNext()) {
+			candidates.add(it.next());
+		}
+
+		final Set<RGB> used = usedColors();
+		int evicted = 0;
+		for (final RGB rgb : candidates) {
+			if (used.contains(rgb)) {
+				// mark as recently used
+				colorCache.get(rgb);
+			} else {
+				colorCache.remove(rgb).dispose();
+				evicted++;
+			}
+		}
+		log.debug("Evicted {} of {} colors", evicted, candidates.size());
+	}
+
+	/**
+	 * @return The RGBs of all cached colors used by the currently existing
+	 *         items of the owner. For virtual tables, only the visible items
+	 *         are considered.
+	 */
+	private Set<RGB> usedColors() {
+		final Set<RGB> used = new HashSet<>();
+		if (owner instanceof Table) {
+			final Table table = (Table) owner;
+			final int columns = Math.max(1, table.getColumnCount());
+			final int from;
+			final int to;
+			if ((table.getStyle() & SWT.VIRTUAL) != 0) {
+				from = table.getTopIndex();
+				to = Math.min(table.getItemCount(),
+						from + table.getClientArea().height / Math.max(1, table.getItemHeight()) + 1);
+			} else {
+				from = 0;
+				to = table.getItemCount();
+			}
+			for (int i = from; i < to; i++) {
+				final TableItem item = table.getItem(i);
+				for (int col = 0; col < columns; col++) {
+					addUsed(used, item.getBackground(col));
+					addUsed(used, item.getForeground(col));
+				}
+			}
+		} else if (owner instanceof Tree) {
+			final Tree tree = (Tree) owner;
+			addUsed(used, tree.getItems(), Math.max(1, tree.getColumnCount()));
+		}
+		return used;
+	}
+
+	private void addUsed(final Set<RGB> used, final TreeItem[] items, final int columns) {
+		for (final TreeItem item : items) {
+			for (int col = 0; col < columns; col++) {
+				addUsed(used, item.getBackground(col));
+				addUsed(used, item.getForeground(col));
+			}
+			if (item.getExpanded()) {
+				addUsed(used, item.getItems(), columns);
+			}
+		}
+	}
+
+	private void addUsed(final Set<RGB> used, final Color color) {
+		// some platforms return a new color instance, so compare by RGB
+		if (color != null) {
+			used.add(color.getRGB());
+		}
+	}
+
 }
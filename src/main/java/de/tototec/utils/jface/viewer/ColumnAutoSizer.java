@@ -0,0 +1,217 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.Random;
+
+import org.eclipse.jface.viewers.CellLabelProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.ColumnViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Item;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.Tree;
+import org.eclipse.swt.widgets.TreeColumn;
+
+/**
+ * Fits the width of a column to its content, without measuring all rows like
+ * {@link TableColumn#pack()} does.
+ * <p>
+ * Only a bounded sample of rows is measured: the first rows, the last rows and
+ * randomly chosen rows in between. Rows, which are not loaded yet, are skipped.
+ * Text widths are cached per font and text.
+ * The column is only ever widened, never narrowed, and measured again
+ * whenever the number of rows changed, e.g. while data streams in, or rows of
+ * a {@link PagedRowSource} were loaded.
+ *
+ * @see ViewerColumnBuilder#setAutoSize(int)
+ */
+public class ColumnAutoSizer {
+
+	public static final int DEFAULT_SAMPLE_SIZE = 200;
+
+	/**
+	 * The space around the content of a cell.
+	 */
+	private static final int PADDING = 12;
+
+	/**
+	 * The additional space for the sort indicator in the header.
+	 */
+	private static final int HEADER_PADDING = 24;
+
+	private final ColumnViewer viewer;
+
+	private final Item column;
+
+	private final int sampleSize;
+
+	private final Random random = new Random();
+
+	private int measuredItemCount = -1;
+
+	/**
+	 * The load count of the virtual content provider at the last measuring.
+	 */
+	private int measuredLoadCount = -1;
+
+	private boolean scheduled;
+
+	/**
+	 * @param column
+	 *            A {@link TableColumn} or {@link TreeColumn} of the viewer.
+	 * @param sampleSize
+	 *            The maximal number of rows to measure.
+	 */
+	public ColumnAutoSizer(final ColumnViewer viewer, final Item column, final int sampleSize) {
+		this.viewer = viewer;
+		this.column = column;
+		this.sampleSize = sampleSize;
+		viewer.getControl().addListener(SWT.Paint, e -> scheduleIfChanged());
+	}
+
+	/**
+	 * Schedule measuring, if the number of rows changed or rows were loaded
+	 * since the last time.
+	 */
+	private void scheduleIfChanged() {
+		if (scheduled || column.isDisposed() || itemCount() == measuredItemCount && loadCount() == measuredLoadCount) {
+			return;
+		}
+		scheduled = true;
+		// not while painting, as resizing paints again
+		viewer.getControl().getDisplay().asyncExec(() -> {
+			scheduled = false;
+			if (!column.isDisposed()) {
+				autoSize();
+			}
+		});
+	}
+
+	/**
+	 * Measure a sample of rows and widen the column, if needed.
+	 */
+	public void autoSize() {
+		final int itemCount = itemCount();
+		measuredItemCount = itemCount;
+		measuredLoadCount = loadCount();
+
+		final Control control = viewer.getControl();
+		final TextExtentCache extents = TextExtentCache.forControl(control);
+		final CellLabelProvider cellLabelProvider = viewer.getLabelProvider(columnIndex());
+		final ColumnLabelProvider labelProvider = cellLabelProvider instanceof ColumnLabelProvider
+				? (ColumnLabelProvider) cellLabelProvider
+				: null;
+		int width = 0;
+		try {
+			if (column.getText() != null) {
+				width = extents.width(control.getFont(), column.getText()) + HEADER_PADDING;
+			}
+			if (labelProvider != null) {
+				final int head = Math.min(itemCount, sampleSize / 4);
+				final int tail = Math.min(itemCount - head, sampleSize / 4);
+				for (int i = 0; i < head; i++) {
+					width = Math.max(width, measure(extents, labelProvider, i));
+				}
+				for (int i = itemCount - tail; i < itemCount; i++) {
+					width = Math.max(width, measure(extents, labelProvider, i));
+				}
+				final int middle = itemCount - head - tail;
+				final int randoms = Math.min(middle, sampleSize - head - tail);
+				for (int i = 0; i < randoms; i++) {
+					width = Math.max(width, measure(extents, labelProvider, head + random.nextInt(middle)));
+				}
+			}
+		} finally {
+			extents.release();
+		}
+
+		if (width > columnWidth()) {
+			setColumnWidth(width);
+		}
+	}
+
+	private int measure(final TextExtentCache extents, final ColumnLabelProvider labelProvider, final int index) {
+		final Object element = element(index);
+		if (element == null) {
+			return 0;
+		}
+		int width = PADDING;
+		final String text = labelProvider.getText(element);
+		if (text != null) {
+			final Font font = labelProvider.getFont(element);
+			width += extents.width(font != null ? font : viewer.getControl().getFont(), text);
+		}
+		final Image image = labelProvider.getImage(element);
+		if (image != null && !image.isDisposed()) {
+			width += image.getBounds().width + PADDING / 2;
+		}
+		return width;
+	}
+
+	/**
+	 * @return The element of the top level row at the given index or
+	 *         <code>null</code>, if not yet known. Rows are never loaded for
+	 *         measuring, as this would e.g. load random pages of a
+	 *         {@link PagedRowSource}.
+	 */
+	private Object element(final int index) {
+		if (viewer.getContentProvider() instanceof VirtualContentProvider<?>) {
+			return ((VirtualContentProvider<?>) viewer.getContentProvider()).getLoadedElement(index);
+		}
+		final Control control = viewer.getControl();
+		if (control instanceof Table) {
+			// items of virtual tables without data are not materialized here
+			return ((Table) control).getItem(index).getData();
+		} else if (control instanceof Tree) {
+			return ((Tree) control).getItem(index).getData();
+		}
+		return null;
+	}
+
+	/**
+	 * @return The number of times rows were loaded, <code>0</code> if all rows
+	 *         are available.
+	 */
+	private int loadCount() {
+		if (viewer.getContentProvider() instanceof VirtualContentProvider<?>) {
+			return ((VirtualContentProvider<?>) viewer.getContentProvider()).getLoadCount();
+		}
+		return 0;
+	}
+
+	private int itemCount() {
+		final Control control = viewer.getControl();
+		if (control instanceof Table) {
+			return ((Table) control).getItemCount();
+		} else if (control instanceof Tree) {
+			return ((Tree) control).getItemCount();
+		}
+		return 0;
+	}
+
+	private int columnIndex() {
+		if (column instanceof TableColumn) {
+			return ((TableColumn) column).getParent().indexOf((TableColumn) column);
+		}
+		return ((TreeColumn) column).getParent().indexOf((TreeColumn) column);
+	}
+
+	private int columnWidth() {
+		if (column instanceof TableColumn) {
+			return ((TableColumn) column).getWidth();
+		}
+		return ((TreeColumn) column).getWidth();
+	}
+
+	private void setColumnWidth(final int width) {
+		if (column instanceof TableColumn) {
+			((TableColumn) column).setWidth(width);
+		} else {
+			((TreeColumn) column).setWidth(width);
+		}
+	}
+
+}
\ No newline at end of file
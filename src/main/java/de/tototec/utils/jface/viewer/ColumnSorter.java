@@ -2,23 +2,38 @@ package de.tototec.utils.jface.viewer;
 
 import static de.tototec.utils.jface.viewer.Util.map;
 
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 import org.eclipse.core.internal.commands.util.Util;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.jface.viewers.ColumnViewer;
 import org.eclipse.jface.viewers.ILabelProvider;
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.jface.viewers.TableViewerColumn;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.TreeViewerColumn;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.jface.viewers.ViewerFilter;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Item;
 import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.swt.widgets.Tree;
@@ -35,6 +50,17 @@ import org.slf4j.LoggerFactory;
  *
  * <ul>
  * <li>Automatically sort column based on it's label provider
+ * <li>Support for typed sort keys (see {@link #SORT_KEY_DATA})
+ * <li>Optional locale-aware sorting of column labels (see
+ * {@link #setCollator(Collator)})
+ * <li>Parallel sorting of large inputs (see
+ * {@link #setParallelSortThreshold(int)})
+ * <li>Toggling the direction of the sort column reverses the previously sorted
+ * order without sorting again
+ * <li>Secondary sort columns, added by clicking on the column header with the
+ * {@link SWT#MOD1} modifier key pressed
+ * <li>Optional sorting in a background thread (see
+ * {@link #setAsyncSorting(ExecutorService, boolean)})
  * <li>Automatically toggle between ascending and descending when clicking on
  * the column header
  * <li>Support for alternative column sorters (if the label provider isn't
@@ -53,6 +79,25 @@ public class ColumnSorter extends ViewerComparator {
 	public static final int NONE = 0;
 	public static final int DESC = -1;
 
+	/**
+	 * Data key of a column, under which a {@link SortKey} can be registered.
+	 * If present, it is used instead of the text of the column label provider.
+	 *
+	 * @see ViewerColumnBuilder#setSortKey(java.util.function.Function)
+	 */
+	public static final String SORT_KEY_DATA = ColumnSorter.class.getName() + ".sortKey";
+
+	/**
+	 * Default for {@link #setParallelSortThreshold(int)}.
+	 */
+	public static final int DEFAULT_PARALLEL_SORT_THRESHOLD = 100000;
+
+	/**
+	 * Appended to the header text of the sort column, while it is sorted in
+	 * the background.
+	 */
+	public static final String SORTING_SUFFIX = " \u2026";
+
 	private final Logger log = LoggerFactory.getLogger(ColumnSorter.class);
 
 	private final ColumnViewer viewer;
@@ -61,10 +106,45 @@ public class ColumnSorter extends ViewerComparator {
 	private TableColumn tableColumn = null;
 	private TreeColumn treeColumn = null;
 	private int columnIndex = 0;
+	/**
+	 * Additional sort columns, consulted in order if all previous sort columns
+	 * compare equal.
+	 */
+	private final List<SortColumn> secondarySortColumns = new ArrayList<SortColumn>();
 
 	private Map<Object, ViewerComparator> customSorters = new LinkedHashMap<Object, ViewerComparator>();
 	private ViewerComparator customSorter = null;
 	private ViewerComparator fallbackComparator;
+	private Collator collator;
+	private int parallelSortThreshold = DEFAULT_PARALLEL_SORT_THRESHOLD;
+
+	/**
+	 * The sorted order of the most recent sort pass since the last column
+	 * selection, by the parent of the sorted elements. Each pass replaces the
+	 * order of its parent, so that at most one order per parent is kept.
+	 */
+	private Map<Object, SortedOrder> sortedOrders = new IdentityHashMap<>();
+	private Object sortedOrdersInput;
+	/**
+	 * While refreshing after a direction toggle, the sorted orders of the
+	 * opposite direction, which can be reversed instead of sorting again.
+	 */
+	private Map<Object, SortedOrder> reversibleOrders;
+
+	private ExecutorService sortExecutor;
+	private boolean threadSafeKeyExtraction;
+	/**
+	 * Incremented with each column selection, to detect outdated background
+	 * sorts.
+	 */
+	private int sortGeneration;
+	private Future<?> runningSort;
+	/**
+	 * While refreshing after a background sort, its result.
+	 */
+	private SortedOrder precomputedOrder;
+	private Item sortingColumn;
+	private String sortingColumnText;
 
 	/**
 	 * Enabled column sorting for the given {@link TableViewer} and the given
@@ -95,8 +175,22 @@ public class ColumnSorter extends ViewerComparator {
 				}
 				final TableColumn selectedColumn = (TableColumn) e.widget;
 				Assert.isTrue(table == selectedColumn.getParent());
+				final boolean modifier = (e.stateMask & SWT.MOD1) != 0;
+				if (modifier && tableColumn != null && tableColumn != selectedColumn && direction != NONE) {
+					ColumnSorter.this.addTableColumn(table, selectedColumn);
+					refresh(false);
+					return;
+				}
+				if (!modifier || tableColumn != selectedColumn) {
+					secondarySortColumns.clear();
+				}
+				final TableColumn oldColumn = tableColumn;
+				final int oldDirection = direction;
 				ColumnSorter.this.setTableColumn(table, selectedColumn);
-				viewer.refresh();
+				if (direction == NONE) {
+					secondarySortColumns.clear();
+				}
+				refresh(oldColumn == tableColumn && direction == -oldDirection && secondarySortColumns.isEmpty());
 			}
 		};
 
@@ -137,8 +231,22 @@ public class ColumnSorter extends ViewerComparator {
 				}
 				final TreeColumn selectedColumn = (TreeColumn) e.widget;
 				Assert.isTrue(tree == selectedColumn.getParent());
+				final boolean modifier = (e.stateMask & SWT.MOD1) != 0;
+				if (modifier && treeColumn != null && treeColumn != selectedColumn && direction != NONE) {
+					ColumnSorter.this.addTreeColumn(tree, selectedColumn);
+					refresh(false);
+					return;
+				}
+				if (!modifier || treeColumn != selectedColumn) {
+					secondarySortColumns.clear();
+				}
+				final TreeColumn oldColumn = treeColumn;
+				final int oldDirection = direction;
 				ColumnSorter.this.setTreeColumn(tree, selectedColumn);
-				viewer.refresh();
+				if (direction == NONE) {
+					secondarySortColumns.clear();
+				}
+				refresh(oldColumn == treeColumn && direction == -oldDirection && secondarySortColumns.isEmpty());
 			}
 		};
 
@@ -166,6 +274,220 @@ public class ColumnSorter extends ViewerComparator {
 		this.fallbackComparator = fallbackComparator;
 	}
 
+	/**
+	 * Compare the label texts of the columns with the given {@link Collator},
+	 * e.g. <code>Collator.getInstance(locale)</code>, instead of comparing
+	 * them char by char. Within one sort pass, each text is converted into a
+	 * {@link java.text.CollationKey} only once.
+	 * <p>
+	 * Columns with a {@link SortKey} or custom sorter are not affected.
+	 *
+	 * @param collator
+	 *            The collator or <code>null</code> to disable collation.
+	 */
+	public void setCollator(final Collator collator) {
+		this.collator = collator;
+		sortedOrders.clear();
+	}
+
+	/**
+	 * Inputs with at least the given number of elements are sorted in
+	 * parallel in the common fork-join pool. The sort keys are still extracted
+	 * in the calling thread and the resulting order is the same as the one of
+	 * the sequential sort. Columns with a custom sorter are always sorted
+	 * sequentially, as their comparators need not be thread-safe. Use
+	 * {@link Integer#MAX_VALUE} to always sort sequentially.
+	 */
+	public void setParallelSortThreshold(final int parallelSortThreshold) {
+		this.parallelSortThreshold = parallelSortThreshold;
+	}
+
+	/**
+	 * Sort in a background thread after the user selected a sort column, to
+	 * keep the UI responsive for large inputs. Only the sorted result is
+	 * applied in the display thread. A newer column selection cancels a
+	 * running background sort. While sorting, the header of the sort column
+	 * is suffixed with {@link #SORTING_SUFFIX}.
+	 * <p>
+	 * Background sorting is only used for viewers with an
+	 * {@link IStructuredContentProvider}, and only for the top level elements
+	 * of a tree.
+	 *
+	 * @param executor
+	 *            The executor to sort with or <code>null</code> to sort in the
+	 *            display thread.
+	 * @param threadSafeKeyExtraction
+	 *            If <code>true</code>, the label providers, sort keys and
+	 *            custom sorters of the columns are thread-safe and the sort
+	 *            keys are also extracted in the background. Otherwise, sort
+	 *            keys are extracted in the display thread and columns with a
+	 *            custom sorter are always sorted in the display thread.
+	 */
+	public void setAsyncSorting(final ExecutorService executor, final boolean threadSafeKeyExtraction) {
+		this.sortExecutor = executor;
+		this.threadSafeKeyExtraction = threadSafeKeyExtraction;
+	}
+
+	/**
+	 * Refresh the viewer after the sort column or direction was changed.
+	 *
+	 * @param toggled
+	 *            <code>true</code> if only the direction of the sort column
+	 *            was reversed.
+	 */
+	private void refresh(final boolean toggled) {
+		cancelAsyncSort();
+		// reversing a previous order is cheap enough to do it in place
+		if (sortExecutor != null && !(toggled && !sortedOrders.isEmpty()) && canSortAsync()) {
+			sortAsync();
+		} else {
+			refreshViewer(toggled);
+		}
+	}
+
+	private void refreshViewer(final boolean toggled) {
+		reversibleOrders = toggled ? sortedOrders : null;
+		sortedOrders = new IdentityHashMap<>();
+		try {
+			VirtualContentProvider.refreshViewer(viewer);
+		} finally {
+			reversibleOrders = null;
+		}
+	}
+
+	/**
+	 * @return The current sort direction, {@link #ASC}, {@link #DESC} or
+	 *         {@link #NONE}.
+	 */
+	public int getDirection() {
+		return direction;
+	}
+
+	/**
+	 * @return The current primary sort column, a {@link TableColumn} or
+	 *         {@link TreeColumn}, or <code>null</code>.
+	 */
+	public Item getSortColumn() {
+		return currentColumn();
+	}
+
+	/**
+	 * @return <code>true</code> if this sorter leaves the elements in their
+	 *         original order.
+	 */
+	boolean isUnsorted() {
+		return direction == NONE && fallbackComparator == null;
+	}
+
+	private boolean canSortAsync() {
+		if (direction == NONE || !(viewer.getContentProvider() instanceof IStructuredContentProvider)) {
+			return false;
+		}
+		if (threadSafeKeyExtraction) {
+			return true;
+		}
+		if (customSorter != null) {
+			return false;
+		}
+		for (final SortColumn sortColumn : secondarySortColumns) {
+			if (customSorters.containsKey(sortColumn.column)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void sortAsync() {
+		final Object input = viewer.getInput();
+		Object[] elements = ((IStructuredContentProvider) viewer.getContentProvider()).getElements(input);
+		for (final ViewerFilter filter : viewer.getFilters()) {
+			elements = filter.filter(viewer, input, elements);
+		}
+		final Object[] unsorted = elements.clone();
+
+		sortedOrders = new IdentityHashMap<>();
+		final int generation = sortGeneration;
+		final int sortDirection = direction;
+		final boolean multiColumn = !secondarySortColumns.isEmpty();
+		final Function<Object[], SortKeys> keyExtractor = keyExtractor();
+		final SortKeys displayThreadKeys = threadSafeKeyExtraction ? null : keyExtractor.apply(unsorted);
+		final Control control = viewer.getControl();
+
+		showSorting(currentColumn());
+		runningSort = sortExecutor.submit(() -> {
+			try {
+				final SortKeys keys = displayThreadKeys != null ? displayThreadKeys : keyExtractor.apply(unsorted);
+				if (Thread.currentThread().isInterrupted()) {
+					return;
+				}
+				final int[] sortedIndices = unsorted.length >= parallelSortThreshold && !keys.comparesElements()
+						? keys.parallelSortedIndices(sortDirection)
+						: keys.sortedIndices(sortDirection);
+				final SortedOrder order = new SortedOrder(unsorted, sortDirection, sortedIndices,
+						multiColumn ? new BitSet() : keys.runStarts(sortedIndices));
+				control.getDisplay().asyncExec(() -> applyAsyncSort(generation, order));
+			} catch (final RuntimeException e) {
+				log.error("Could not sort in background. Sorting in display thread instead.", e);
+				control.getDisplay().asyncExec(() -> applyAsyncSort(generation, null));
+			}
+		});
+	}
+
+	/**
+	 * Apply the result of a background sort, if it is still current.
+	 *
+	 * @param order
+	 *            The sorted order or <code>null</code> to sort in the display
+	 *            thread.
+	 */
+	private void applyAsyncSort(final int generation, final SortedOrder order) {
+		if (generation != sortGeneration || viewer.getControl().isDisposed()) {
+			return;
+		}
+		runningSort = null;
+		showSorting(null);
+		precomputedOrder = order;
+		try {
+			VirtualContentProvider.refreshViewer(viewer);
+		} finally {
+			precomputedOrder = null;
+		}
+	}
+
+	private void cancelAsyncSort() {
+		sortGeneration++;
+		if (runningSort != null) {
+			runningSort.cancel(true);
+			runningSort = null;
+		}
+		showSorting(null);
+	}
+
+	/**
+	 * Mark the given column as being sorted in the background.
+	 *
+	 * @param column
+	 *            The column or <code>null</code> if nothing is sorted.
+	 */
+	private void showSorting(final Item column) {
+		if (sortingColumn == null && column == null) {
+			return;
+		}
+		if (sortingColumn != null && !sortingColumn.isDisposed()) {
+			sortingColumn.setText(sortingColumnText);
+		}
+		sortingColumn = column;
+		sortingColumnText = null;
+		if (column != null) {
+			sortingColumnText = column.getText();
+			column.setText(sortingColumnText + SORTING_SUFFIX);
+		}
+		final Control control = viewer.getControl();
+		if (!control.isDisposed()) {
+			control.setCursor(column == null ? null : control.getDisplay().getSystemCursor(SWT.CURSOR_APPSTARTING));
+		}
+	}
+
 	protected void setTableColumn(final Table table, final TableColumn selectedColumn) {
 		if (tableColumn == selectedColumn) {
 			if (fallbackComparator != null) {
@@ -216,6 +538,35 @@ public class ColumnSorter extends ViewerComparator {
 
 	}
 
+	/**
+	 * Add the given column as secondary sort column in ascending order. If it
+	 * already is a secondary sort column, its direction is toggled instead.
+	 */
+	protected void addTableColumn(final Table table, final TableColumn selectedColumn) {
+		addSecondarySortColumn(selectedColumn, Arrays.asList(table.getColumns()).indexOf(selectedColumn));
+	}
+
+	/**
+	 * Add the given column as secondary sort column in ascending order. If it
+	 * already is a secondary sort column, its direction is toggled instead.
+	 */
+	protected void addTreeColumn(final Tree tree, final TreeColumn selectedColumn) {
+		addSecondarySortColumn(selectedColumn, Arrays.asList(tree.getColumns()).indexOf(selectedColumn));
+	}
+
+	private void addSecondarySortColumn(final Item column, final int index) {
+		if (index < 0) {
+			return;
+		}
+		for (final SortColumn sortColumn : secondarySortColumns) {
+			if (sortColumn.column == column) {
+				sortColumn.direction = -sortColumn.direction;
+				return;
+			}
+		}
+		secondarySortColumns.add(new SortColumn(column, index, ASC));
+	}
+
 	protected void setTreeColumn(final Tree tree, final TreeColumn selectedColumn) {
 		if (treeColumn == selectedColumn) {
 			if (fallbackComparator != null) {
@@ -275,16 +626,255 @@ public class ColumnSorter extends ViewerComparator {
 		}
 	}
 
+	/**
+	 * Sorts the given elements. When sorting by the label of a column, the
+	 * text of each element is requested from the label provider only once per
+	 * sort pass instead of twice per comparison.
+	 * <p>
+	 * After the user toggled the direction of the sort column, the previously
+	 * sorted order of the very same elements is reversed instead, without
+	 * extracting keys or comparing elements.
+	 */
+	@Override
+	public void sort(final Viewer viewer, final Object[] elements) {
+		if (direction == NONE || customSorter != null && secondarySortColumns.isEmpty() || viewer != this.viewer
+				|| elements.length < 2) {
+			super.sort(viewer, elements);
+			return;
+		}
+
+		final Object input = viewer.getInput();
+		if (input != sortedOrdersInput) {
+			sortedOrders.clear();
+			reversibleOrders = null;
+			sortedOrdersInput = input;
+		}
+
+		final Object parent = parentOf(elements[0]);
+		// an outdated order of the same parent is of no use anymore
+		sortedOrders.remove(parent);
+		if (precomputedOrder != null && precomputedOrder.direction == direction
+				&& precomputedOrder.isOrderOf(elements)) {
+			if (secondarySortColumns.isEmpty()) {
+				sortedOrders.put(parent, precomputedOrder);
+			}
+			SortKeys.permute(elements, precomputedOrder.sortedIndices);
+			return;
+		}
+		if (reversibleOrders != null) {
+			final SortedOrder previous = reversibleOrders.get(parent);
+			if (previous != null && previous.direction == -direction && previous.isOrderOf(elements)) {
+				final SortedOrder reversed = previous.reverse();
+				sortedOrders.put(parent, reversed);
+				SortKeys.permute(elements, reversed.sortedIndices);
+				return;
+			}
+		}
+
+		final SortKeys keys = keyExtractor().apply(elements);
+		final int[] sortedIndices = elements.length >= parallelSortThreshold && !keys.comparesElements()
+				? keys.parallelSortedIndices(direction)
+				: keys.sortedIndices(direction);
+		// reversing a multi column order would also reverse the secondary columns
+		if (secondarySortColumns.isEmpty()) {
+			sortedOrders.put(parent,
+					new SortedOrder(elements.clone(), direction, sortedIndices, keys.runStarts(sortedIndices)));
+		}
+		SortKeys.permute(elements, sortedIndices);
+	}
+
+	/**
+	 * @return The parent of the given element, or the input of the viewer if
+	 *         it is a top level element or its parent is unknown.
+	 */
+	private Object parentOf(final Object element) {
+		Object parent = null;
+		if (viewer.getContentProvider() instanceof ITreeContentProvider) {
+			parent = ((ITreeContentProvider) viewer.getContentProvider()).getParent(element);
+		} else if (viewer.getContentProvider() instanceof ILazyTreeContentProvider) {
+			parent = ((ILazyTreeContentProvider) viewer.getContentProvider()).getParent(element);
+		}
+		return parent != null ? parent : viewer.getInput();
+	}
+
+	/**
+	 * Create an extractor for the sort keys of all sort columns. With
+	 * secondary sort columns, the result is a composite key, whose directions
+	 * are relative to the direction of the primary sort column.
+	 * <p>
+	 * All widget access happens here, so the returned extractor can be
+	 * applied in any thread, if the label providers, sort keys and custom
+	 * sorters allow it.
+	 */
+	private Function<Object[], SortKeys> keyExtractor() {
+		final ViewerComparator primarySorter = customSorter;
+		final Function<Object[], SortKeys> primaryExtractor = primarySorter != null
+				? elements -> SortKeys.comparator(elements, (e1, e2) -> primarySorter.compare(viewer, e1, e2))
+				: keyExtractor(currentColumn(), columnIndex);
+		if (secondarySortColumns.isEmpty()) {
+			return primaryExtractor;
+		}
+		final List<Function<Object[], SortKeys>> extractors = new ArrayList<Function<Object[], SortKeys>>();
+		final int[] directions = new int[secondarySortColumns.size() + 1];
+		extractors.add(primaryExtractor);
+		directions[0] = ASC;
+		for (final SortColumn sortColumn : secondarySortColumns) {
+			directions[extractors.size()] = direction * sortColumn.direction;
+			extractors.add(keyExtractor(sortColumn.column, sortColumn.index));
+		}
+		return elements -> {
+			final SortKeys[] keys = new SortKeys[extractors.size()];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = extractors.get(i).apply(elements);
+			}
+			return SortKeys.composite(keys, directions);
+		};
+	}
+
+	private Function<Object[], SortKeys> keyExtractor(final Item column, final int index) {
+		final ViewerComparator columnSorter = customSorters.get(column);
+		if (columnSorter != null) {
+			return elements -> SortKeys.comparator(elements, (e1, e2) -> columnSorter.compare(viewer, e1, e2));
+		}
+		final SortKey<?> sortKey = sortKey(column);
+		if (sortKey != null) {
+			return sortKey::extract;
+		}
+		final ILabelProvider labelProvider = (ILabelProvider) viewer.getLabelProvider(index);
+		if (collator != null) {
+			// collators are not thread-safe
+			final Collator columnCollator = (Collator) collator.clone();
+			return elements -> SortKeys.collated(elements, labelProvider::getText, columnCollator);
+		}
+		return elements -> SortKeys.text(elements, labelProvider::getText);
+	}
+
 	protected int doCompare(final Viewer v, final Object e1, final Object e2) {
+		int result;
 		if (customSorter != null) {
-			return customSorter.compare(v, e1, e2);
-		}
-		if (v != this.viewer) {
+			result = customSorter.compare(v, e1, e2);
+		} else if (v != this.viewer) {
 			log.warn("compare invoked on the wrong table. Ignoring");
 			return 0;
+		} else {
+			result = compareColumn(currentColumn(), columnIndex, e1, e2);
+		}
+		for (final SortColumn sortColumn : secondarySortColumns) {
+			if (result != 0) {
+				break;
+			}
+			result = direction * sortColumn.direction * compareColumn(sortColumn.column, sortColumn.index, e1, e2);
+		}
+		return result;
+	}
+
+	private int compareColumn(final Item column, final int index, final Object e1, final Object e2) {
+		final ViewerComparator columnSorter = customSorters.get(column);
+		if (columnSorter != null) {
+			return columnSorter.compare(viewer, e1, e2);
+		}
+		final SortKey<?> sortKey = sortKey(column);
+		if (sortKey != null) {
+			return sortKey.compare(e1, e2);
+		}
+		final ILabelProvider labelProvider = (ILabelProvider) viewer.getLabelProvider(index);
+		if (collator != null) {
+			final String text1 = labelProvider.getText(e1);
+			final String text2 = labelProvider.getText(e2);
+			return text1 == null || text2 == null ? Util.compare(text1, text2) : collator.compare(text1, text2);
 		}
-		final ILabelProvider labelProvider = (ILabelProvider) viewer.getLabelProvider(columnIndex);
 		return Util.compare(labelProvider.getText(e1), labelProvider.getText(e2));
 	}
 
+	/**
+	 * @return The current primary sort column or <code>null</code>.
+	 */
+	private Item currentColumn() {
+		return tableColumn != null ? tableColumn : treeColumn;
+	}
+
+	/**
+	 * @return The {@link SortKey} registered at the given column or
+	 *         <code>null</code>.
+	 */
+	private SortKey<?> sortKey(final Item column) {
+		if (column == null || column.isDisposed()) {
+			return null;
+		}
+		final Object sortKey = column.getData(SORT_KEY_DATA);
+		return sortKey instanceof SortKey<?> ? (SortKey<?>) sortKey : null;
+	}
+
+	/**
+	 * A secondary sort column.
+	 */
+	private static final class SortColumn {
+		private final Item column;
+		private final int index;
+		private int direction;
+
+		SortColumn(final Item column, final int index, final int direction) {
+			this.column = column;
+			this.index = index;
+			this.direction = direction;
+		}
+	}
+
+	/**
+	 * The result of a sort pass, which can be reversed without comparing
+	 * elements again.
+	 */
+	private static final class SortedOrder {
+		private final Object[] unsorted;
+		private final int direction;
+		private final int[] sortedIndices;
+		/**
+		 * Start positions of runs of elements with equal keys, which keep their
+		 * unsorted order in both directions.
+		 */
+		private final BitSet runStarts;
+
+		SortedOrder(final Object[] unsorted, final int direction, final int[] sortedIndices, final BitSet runStarts) {
+			this.unsorted = unsorted;
+			this.direction = direction;
+			this.sortedIndices = sortedIndices;
+			this.runStarts = runStarts;
+		}
+
+		/**
+		 * @return <code>true</code> if this order was computed for exactly the
+		 *         given (unsorted) elements.
+		 */
+		boolean isOrderOf(final Object[] elements) {
+			if (elements.length != unsorted.length) {
+				return false;
+			}
+			for (int i = 0; i < elements.length; i++) {
+				if (elements[i] != unsorted[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return The order of the opposite direction.
+		 */
+		SortedOrder reverse() {
+			final int size = sortedIndices.length;
+			final int[] reversedIndices = new int[size];
+			final BitSet reversedRunStarts = new BitSet(size);
+			int pos = 0;
+			int end = size;
+			for (int start = runStarts.previousSetBit(size - 1); start >= 0; start = runStarts
+					.previousSetBit(start - 1)) {
+				reversedRunStarts.set(pos);
+				System.arraycopy(sortedIndices, start, reversedIndices, pos, end - start);
+				pos += end - start;
+				end = start;
+			}
+			return new SortedOrder(unsorted, -direction, reversedIndices, reversedRunStarts);
+		}
+	}
+
 }
\ No newline at end of file
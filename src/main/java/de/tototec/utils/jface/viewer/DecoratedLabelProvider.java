@@ -1,28 +1,57 @@
 package de.tototec.utils.jface.viewer;
 
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
+import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.viewers.ColumnLabelProvider;
 import org.eclipse.jface.viewers.IColorProvider;
+import org.eclipse.jface.viewers.ViewerCell;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.RGB;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.eclipse.swt.widgets.Display;
 
 public class DecoratedLabelProvider<T> extends ColumnLabelProvider implements IColorProvider {
 	
-	private final Logger log = LoggerFactory.getLogger(DecoratedLabelProvider.class);
-	
 	private final ColumnLabelProvider labelProvider;
 	private final Function<RGB, Color> colorProvider;
 	private final Optional<BiFunction<T, RGB, RGB>> background;
 	private final Optional<BiFunction<T, RGB, RGB>> foreground;
 	private final Optional<BiFunction<T, String, String>> toolTip;
+	private IntColorDecorator<T> intBackground;
+	private IntColorDecorator<T> intForeground;
+	private IntColorCache intColorCache;
+	private BiFunction<T, FontData, FontData> font;
+	private Function<FontData, Font> fontProvider;
+	private BiFunction<T, Image, ImageDescriptor> image;
+	private Function<ImageDescriptor, Image> imageProvider;
+	private Function<T, Set<String>> overlays;
+	private BiFunction<Image, Set<String>, Image> overlayImageProvider;
+	private Procedure2<T, CellAttributes> cellUpdater;
+	private final CellAttributes cellAttributes = new CellAttributes();
+	private final CellValues cellValues = new CellValues();
+	private CellCache cellCache;
+	private int cellCacheSlot;
+	private AsyncToolTipSupport asyncToolTipSupport;
+	private ExecutorService toolTipExecutor;
+	private String toolTipPlaceholder;
+	private long toolTipExpiryMillis;
+	private Map<Object, AsyncToolTipText> asyncToolTipTexts;
+	private Future<String> pendingToolTip;
+	private Object pendingToolTipElement;
+	private ErrorReporter errorReporter = new ErrorReporter(null);
 
 	public DecoratedLabelProvider(
 			final ColumnLabelProvider labelProvider,
@@ -37,6 +66,188 @@ public class DecoratedLabelProvider<T> extends ColumnLabelProvider implements IC
 		this.toolTip = toolTip;
 	}
 
+	/**
+	 * Report failures of the decorators to the given error reporter.
+	 */
+	public void setErrorReporter(final ErrorReporter errorReporter) {
+		this.errorReporter = errorReporter;
+	}
+
+	public ErrorReporter getErrorReporter() {
+		return errorReporter;
+	}
+
+	/**
+	 * Use the given decorator for the background color instead of the
+	 * {@link RGB} based one. Steady-state painting with it does not allocate.
+	 */
+	public void setBackground(final IntColorDecorator<T> background) {
+		this.intBackground = background;
+	}
+
+	/**
+	 * Use the given decorator for the foreground color instead of the
+	 * {@link RGB} based one. Steady-state painting with it does not allocate.
+	 */
+	public void setForeground(final IntColorDecorator<T> foreground) {
+		this.intForeground = foreground;
+	}
+
+	/**
+	 * Decorate the font. The decorator gets the font data of the base font,
+	 * or <code>null</code>, and returns the font data of the font to use, or
+	 * <code>null</code> for the default font.
+	 *
+	 * @param fontProvider
+	 *            Creates and caches the fonts, e.g. a {@link FontProvider}.
+	 */
+	public void setFont(final BiFunction<T, FontData, FontData> font, final Function<FontData, Font> fontProvider) {
+		this.font = font;
+		this.fontProvider = fontProvider;
+	}
+
+	/**
+	 * Decorate the image. The decorator gets the base image, or
+	 * <code>null</code>, and returns the descriptor of the image to use, or
+	 * <code>null</code> to keep the base image.
+	 *
+	 * @param imageProvider
+	 *            Creates and caches the images, e.g. an {@link ImageProvider}.
+	 */
+	public void setImage(final BiFunction<T, Image, ImageDescriptor> image,
+			final Function<ImageDescriptor, Image> imageProvider) {
+		this.image = image;
+		this.imageProvider = imageProvider;
+	}
+
+	/**
+	 * Add overlay images to the (decorated) image. The decorator returns the
+	 * keys of the overlays to show, or <code>null</code>.
+	 *
+	 * @param overlayImageProvider
+	 *            Creates and caches the composite images, e.g. an
+	 *            {@link OverlayImageProvider}.
+	 */
+	public void setOverlays(final Function<T, Set<String>> overlays,
+			final BiFunction<Image, Set<String>, Image> overlayImageProvider) {
+		this.overlays = overlays;
+		this.overlayImageProvider = overlayImageProvider;
+	}
+
+	/**
+	 * Compute all attributes of a cell in one pass. Attributes not set by the
+	 * cell updater are computed as usual.
+	 *
+	 * @param fontProvider
+	 *            Creates and caches the fonts given as {@link FontData}.
+	 * @param imageProvider
+	 *            Creates and caches the images given as
+	 *            {@link ImageDescriptor}.
+	 */
+	public void setCellUpdater(final Procedure2<T, CellAttributes> cellUpdater,
+			final Function<FontData, Font> fontProvider, final Function<ImageDescriptor, Image> imageProvider) {
+		this.cellUpdater = cellUpdater;
+		this.fontProvider = fontProvider;
+		this.imageProvider = imageProvider;
+	}
+
+	/**
+	 * Memoize the computed cell attributes and tooltips in the given cache.
+	 * They are computed again, whenever the viewer updates or refreshes the
+	 * element, see {@link CellCache}.
+	 */
+	public void setCellCache(final CellCache cellCache) {
+		this.cellCache = cellCache;
+		this.cellCacheSlot = cellCache == null ? 0 : cellCache.register();
+	}
+
+	/**
+	 * Apply the tooltip decorator in the background.
+	 *
+	 * @param toolTipSupport
+	 *            The tooltip support of the viewer.
+	 * @param executor
+	 *            The executor to apply the tooltip decorator.
+	 * @param placeholder
+	 *            The tooltip text shown until the decorated tooltip text is
+	 *            available.
+	 * @param expiryMillis
+	 *            The time, decorated tooltip texts are cached per element.
+	 */
+	public void setAsyncToolTip(final AsyncToolTipSupport toolTipSupport, final ExecutorService executor,
+			final String placeholder, final long expiryMillis) {
+		this.asyncToolTipSupport = toolTipSupport;
+		this.toolTipExecutor = executor;
+		this.toolTipPlaceholder = placeholder;
+		this.toolTipExpiryMillis = expiryMillis;
+		this.asyncToolTipTexts = new WeakHashMap<>();
+	}
+
+	@Override
+	public void update(final ViewerCell cell) {
+		if (cellCache == null) {
+			if (cellUpdater == null) {
+				super.update(cell);
+			} else {
+				computeCell(cell.getElement(), cellValues);
+				cellValues.applyTo(cell);
+				cellValues.clear();
+			}
+			return;
+		}
+
+		final Object element = cell.getElement();
+		CellValues values = (CellValues) cellCache.get(element, cellCacheSlot);
+		// outside of materializing, the element was updated or refreshed
+		if (values == null || !values.isValid() || !cellCache.isMaterializing()) {
+			if (values == null) {
+				values = new CellValues();
+				cellCache.put(element, cellCacheSlot, values);
+			}
+			values.toolTipComputed = false;
+			computeCell(element, values);
+		}
+		values.applyTo(cell);
+	}
+
+	private void computeCell(final Object element, final CellValues values) {
+		if (cellUpdater == null) {
+			values.text = getText(element);
+			values.image = getImage(element);
+			values.background = getBackground(element);
+			values.foreground = getForeground(element);
+			values.font = getFont(element);
+			values.computed = true;
+			return;
+		}
+
+		final CellAttributes attributes = cellAttributes;
+		attributes.reset();
+		try {
+			cellUpdater.apply(typed(element), attributes);
+		} catch (final Exception e) {
+			errorReporter.report("cellUpdater", element, e);
+			attributes.reset();
+		}
+
+		values.text = attributes.textSet ? attributes.text : getText(element);
+		if (attributes.imageSet) {
+			values.image = attributes.imageDescriptor != null ? imageProvider.apply(attributes.imageDescriptor)
+					: attributes.image;
+		} else {
+			values.image = getImage(element);
+		}
+		values.background = attributes.backgroundSet ? intColor(attributes.background) : getBackground(element);
+		values.foreground = attributes.foregroundSet ? intColor(attributes.foreground) : getForeground(element);
+		if (attributes.fontSet) {
+			values.font = attributes.fontData != null ? fontProvider.apply(attributes.fontData) : attributes.font;
+		} else {
+			values.font = getFont(element);
+		}
+		values.computed = true;
+		attributes.reset();
+	}
+
 	@Override
 	public String getText(final Object element) {
 		return labelProvider.getText(element);
@@ -44,7 +255,22 @@ public class DecoratedLabelProvider<T> extends ColumnLabelProvider implements IC
 
 	@Override
 	public Image getImage(final Object element) {
-		return labelProvider.getImage(element);
+		Image baseImage = labelProvider.getImage(element);
+		try {
+			if (image != null) {
+				final ImageDescriptor imageDescriptor = image.apply(typed(element), baseImage);
+				if (imageDescriptor != null) {
+					baseImage = imageProvider.apply(imageDescriptor);
+				}
+			}
+			if (overlays != null) {
+				return overlayImageProvider.apply(baseImage, overlays.apply(typed(element)));
+			}
+		} catch (final Exception e) {
+			errorReporter.report("imageDecorator", element, e);
+			return baseImage;
+		}
+		return baseImage;
 	}
 
 	@Override
@@ -84,10 +310,85 @@ public class DecoratedLabelProvider<T> extends ColumnLabelProvider implements IC
 
 	@Override
 	public String getToolTipText(final Object element) {
+		if (toolTipExecutor != null && toolTip.isPresent()) {
+			return asyncToolTipText(element);
+		}
+		if (cellCache == null) {
+			return computeToolTipText(element);
+		}
+		CellValues values = (CellValues) cellCache.get(element, cellCacheSlot);
+		if (values == null) {
+			values = new CellValues();
+			cellCache.put(element, cellCacheSlot, values);
+		}
+		if (!values.toolTipComputed) {
+			values.toolTipText = computeToolTipText(element);
+			values.toolTipComputed = true;
+		}
+		return values.toolTipText;
+	}
+
+	private String computeToolTipText(final Object element) {
 		final String baseToolTipText = labelProvider.getToolTipText(element);
 		return toolTip.map(d -> d.apply((T) element, baseToolTipText)).orElse(baseToolTipText);
 	}
 
+	/**
+	 * @return The cached decorated tooltip text or the placeholder, while the
+	 *         decorated tooltip text is computed in the background.
+	 */
+	private String asyncToolTipText(final Object element) {
+		final AsyncToolTipText cached = asyncToolTipTexts.get(element);
+		if (cached != null && cached.expires > System.currentTimeMillis()) {
+			return cached.text;
+		}
+		if (pendingToolTipElement == element && asyncToolTipSupport.isPending(pendingToolTip)) {
+			return toolTipPlaceholder;
+		}
+
+		final String baseToolTipText = labelProvider.getToolTipText(element);
+		final BiFunction<T, String, String> decorator = toolTip.get();
+		final Display display = Display.getCurrent();
+		final AtomicReference<Future<String>> future = new AtomicReference<>();
+		future.set(toolTipExecutor.submit(() -> {
+			try {
+				return decorator.apply(typed(element), baseToolTipText);
+			} finally {
+				if (!display.isDisposed()) {
+					display.asyncExec(() -> applyAsyncToolTip(future.get(), element, baseToolTipText));
+				}
+			}
+		}));
+		pendingToolTip = future.get();
+		pendingToolTipElement = element;
+		asyncToolTipSupport.setPending(future.get());
+		return toolTipPlaceholder;
+	}
+
+	/**
+	 * Cache the result of a background tooltip computation and show it, if
+	 * it is still pending.
+	 */
+	private void applyAsyncToolTip(final Future<String> future, final Object element, final String baseToolTipText) {
+		if (future == null || !asyncToolTipSupport.finishPending(future)) {
+			return;
+		}
+		pendingToolTip = null;
+		pendingToolTipElement = null;
+		String text;
+		try {
+			text = future.get();
+		} catch (final ExecutionException e) {
+			errorReporter.report("toolTipDecorator", element, e.getCause());
+			text = baseToolTipText;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		asyncToolTipTexts.put(element, new AsyncToolTipText(text, System.currentTimeMillis() + toolTipExpiryMillis));
+		asyncToolTipSupport.reshow(element, this);
+	}
+
 	@Override
 	public int getToolTipTimeDisplayed(final Object object) {
 		return labelProvider.getToolTipTimeDisplayed(object);
@@ -95,20 +396,34 @@ public class DecoratedLabelProvider<T> extends ColumnLabelProvider implements IC
 
 	@Override
 	public Font getFont(final Object element) {
-		return labelProvider.getFont(element);
+		final Font baseFont = labelProvider.getFont(element);
+		try {
+			if (font != null) {
+				final FontData baseFontData = baseFont == null ? null : baseFont.getFontData()[0];
+				final FontData fontData = font.apply(typed(element), baseFontData);
+				return fontData == null ? null : fontProvider.apply(fontData);
+			}
+		} catch (final Exception e) {
+			errorReporter.report("fontDecorator", element, e);
+			return baseFont;
+		}
+		return baseFont;
 	}
 
 	@Override
 	public Color getBackground(final Object element) {
 		final Color baseColor = labelProvider.getBackground(element);
 		try {
+			if (intBackground != null) {
+				return intColor(intBackground, element, baseColor);
+			}
 			if (background.isPresent()) {
 				final RGB baseRgb = baseColor == null ? null : baseColor.getRGB();
 				final RGB rgb = background.get().apply((T) element, baseRgb);
 				return rgb == null ? null : colorProvider.apply(rgb);
 			}
 		} catch (final Exception e) {
-			log.error("Could not apply backgroudColorDecorator on element: {}", element, e);
+			errorReporter.report("backgroundColorDecorator", element, e);
 			return baseColor;
 		}
 		return baseColor;
@@ -118,15 +433,94 @@ public class DecoratedLabelProvider<T> extends ColumnLabelProvider implements IC
 	public Color getForeground(final Object element) {
 		final Color baseColor = labelProvider.getForeground(element);
 		try {
+			if (intForeground != null) {
+				return intColor(intForeground, element, baseColor);
+			}
 			if (foreground.isPresent()) {
 				final RGB baseRgb = baseColor == null ? null : baseColor.getRGB();
 				final RGB rgb = foreground.get().apply((T) element, baseRgb);
 				return rgb == null ? null : colorProvider.apply(rgb);
 			}
 		} catch (final Exception e) {
-			log.error("Could not apply foregroudColorDecorator on element: {}", element, e);
+			errorReporter.report("foregroundColorDecorator", element, e);
 			return baseColor;
 		}
 		return baseColor;
 	}
+
+	@SuppressWarnings("unchecked")
+	private Color intColor(final IntColorDecorator<T> decorator, final Object element, final Color baseColor) {
+		return intColor(decorator.apply((T) element, IntColorDecorator.rgb(baseColor)));
+	}
+
+	/**
+	 * @return The given element as element type of the viewer.
+	 */
+	@SuppressWarnings("unchecked")
+	private T typed(final Object element) {
+		return (T) element;
+	}
+
+	private Color intColor(final int rgb) {
+		if (intColorCache == null) {
+			intColorCache = new IntColorCache(colorProvider);
+		}
+		return intColorCache.get(rgb);
+	}
+
+	/**
+	 * A decorated tooltip text with its expiry time.
+	 */
+	private static final class AsyncToolTipText {
+		private final String text;
+		private final long expires;
+
+		AsyncToolTipText(final String text, final long expires) {
+			this.text = text;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * The computed attributes of a cell.
+	 */
+	private static final class CellValues {
+		private boolean computed;
+		private String text;
+		private Image image;
+		private Font font;
+		private Color foreground;
+		private Color background;
+		private boolean toolTipComputed;
+		private String toolTipText;
+
+		/**
+		 * @return <code>false</code> if not yet computed or if a resource was
+		 *         disposed in the meantime.
+		 */
+		boolean isValid() {
+			return computed
+					&& (image == null || !image.isDisposed())
+					&& (font == null || !font.isDisposed())
+					&& (foreground == null || !foreground.isDisposed())
+					&& (background == null || !background.isDisposed());
+		}
+
+		void applyTo(final ViewerCell cell) {
+			cell.setText(text);
+			cell.setImage(image);
+			cell.setBackground(background);
+			cell.setForeground(foreground);
+			cell.setFont(font);
+		}
+
+		void clear() {
+			computed = false;
+			text = null;
+			image = null;
+			font = null;
+			foreground = null;
+			background = null;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,287 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * A content provider for {@link TableViewer}s, which applies changes of its
+ * rows with the fewest possible <code>remove</code>, <code>add</code>,
+ * <code>insert</code> and <code>update</code> calls instead of a full refresh.
+ * <p>
+ * Rows are identified by a key, e.g. their database id. Changes are given
+ * either as a complete new snapshot of all rows, see
+ * {@link #setSnapshot(Collection)}, or as an explicit diff, see
+ * {@link #applyDelta(Collection, Collection, Collection)}.
+ * <p>
+ * In a sorted viewer, e.g. with a {@link ColumnSorter}, added and changed rows
+ * are inserted at their sort position by binary search against the current
+ * order of the viewer. In an unsorted viewer without filters, rows are
+ * inserted at their position in the snapshot. Otherwise, when kept rows
+ * changed their relative order in an unsorted viewer, or when rows were
+ * modified in an unsorted viewer with filters, the viewer is refreshed.
+ * <p>
+ * The {@link CellCache}, {@link QuickFilter}s and {@link IncrementalFilter}s
+ * of the viewer are updated for all changed rows.
+ *
+ * @see TableViewerBuilder#withDeltaUpdates(DeltaContentProvider)
+ */
+public class DeltaContentProvider<T, K> implements IStructuredContentProvider {
+
+	private final Function<? super T, ? extends K> identity;
+
+	/**
+	 * The current rows by key, in input order.
+	 */
+	private Map<K, T> rows = new LinkedHashMap<>();
+
+	private TableViewer viewer;
+
+	/**
+	 * @param identity
+	 *            The function to get the key of a row.
+	 */
+	public DeltaContentProvider(final Function<? super T, ? extends K> identity) {
+		this.identity = identity;
+	}
+
+	/**
+	 * Replace all rows with the given snapshot. Rows with a key not contained
+	 * before are added, rows with a key no longer contained are removed, and
+	 * rows whose instance was replaced by another one with the same key are
+	 * changed. Rows of the very same instance are considered unchanged.
+	 */
+	public void setSnapshot(final Collection<? extends T> snapshot) {
+		final Map<K, T> newRows = new LinkedHashMap<>();
+		for (final T row : snapshot) {
+			newRows.put(identity.apply(row), row);
+		}
+
+		final Set<Object> inserted = Collections.newSetFromMap(new IdentityHashMap<>());
+		final List<Object> removed = new ArrayList<>();
+		for (final Map.Entry<K, T> entry : rows.entrySet()) {
+			final T newRow = newRows.get(entry.getKey());
+			if (newRow == null) {
+				removed.add(entry.getValue());
+			} else if (newRow != entry.getValue()) {
+				removed.add(entry.getValue());
+				inserted.add(newRow);
+			}
+		}
+		for (final Map.Entry<K, T> entry : newRows.entrySet()) {
+			if (!rows.containsKey(entry.getKey())) {
+				inserted.add(entry.getValue());
+			}
+		}
+		apply(newRows, removed, inserted, Collections.emptySet());
+	}
+
+	/**
+	 * Apply the given changes.
+	 *
+	 * @param added
+	 *            The added rows, appended to the input order.
+	 * @param removed
+	 *            The removed rows. Only their keys are used.
+	 * @param changed
+	 *            The changed rows, either new instances replacing the rows
+	 *            with the same keys or the very same instances, which were
+	 *            modified.
+	 */
+	public void applyDelta(final Collection<? extends T> added, final Collection<? extends T> removed,
+			final Collection<? extends T> changed) {
+		final Map<K, T> newRows = new LinkedHashMap<>(rows);
+		final Set<Object> inserted = Collections.newSetFromMap(new IdentityHashMap<>());
+		final Set<Object> modified = Collections.newSetFromMap(new IdentityHashMap<>());
+		final List<Object> removedRows = new ArrayList<>();
+
+		for (final T row : removed) {
+			final T oldRow = newRows.remove(identity.apply(row));
+			if (oldRow != null) {
+				removedRows.add(oldRow);
+			}
+		}
+		for (final T row : changed) {
+			final T oldRow = newRows.put(identity.apply(row), row);
+			if (oldRow == row) {
+				modified.add(row);
+			} else {
+				if (oldRow != null) {
+					removedRows.add(oldRow);
+				}
+				inserted.add(row);
+			}
+		}
+		for (final T row : added) {
+			final T oldRow = newRows.put(identity.apply(row), row);
+			if (oldRow != null && oldRow != row) {
+				removedRows.add(oldRow);
+			}
+			if (oldRow != row) {
+				inserted.add(row);
+			}
+		}
+		apply(newRows, removedRows, inserted, modified);
+	}
+
+	/**
+	 * Update the viewer to the given rows.
+	 *
+	 * @param removed
+	 *            The row instances to remove from the viewer.
+	 * @param inserted
+	 *            The row instances to insert into the viewer.
+	 * @param modified
+	 *            The row instances, which are kept but were modified.
+	 */
+	private void apply(final Map<K, T> newRows, final List<Object> removed, final Set<Object> inserted,
+			final Set<Object> modified) {
+		final Map<K, T> oldRows = rows;
+		rows = newRows;
+		if (viewer == null || viewer.getControl().isDisposed()) {
+			return;
+		}
+
+		final ViewerComparator comparator = viewer.getComparator();
+		final boolean sorted = comparator != null
+				&& !(comparator instanceof ColumnSorter && ((ColumnSorter) comparator).isUnsorted());
+		final boolean filtered = viewer.getFilters().length > 0;
+		final boolean positional = comparator == null && !filtered;
+		final boolean reordered = !sorted && !keptOrderUnchanged(oldRows, newRows);
+		if (removed.isEmpty() && inserted.isEmpty() && modified.isEmpty() && !reordered) {
+			return;
+		}
+		// updating does not filter again, and adding appends in unsorted viewers
+		if (!sorted && (reordered || !inserted.isEmpty() && !positional || !modified.isEmpty() && filtered)) {
+			invalidate(removed, inserted, modified);
+			viewer.refresh();
+			return;
+		}
+
+		invalidate(removed, inserted, modified);
+		final Control control = viewer.getControl();
+		control.setRedraw(false);
+		try {
+			if (sorted) {
+				// modified rows may have a new sort position, too
+				final List<Object> remove = new ArrayList<>(removed);
+				remove.addAll(modified);
+				viewer.remove(remove.toArray());
+				final List<Object> add = new ArrayList<>(inserted);
+				add.addAll(modified);
+				viewer.add(add.toArray());
+			} else {
+				if (!removed.isEmpty()) {
+					viewer.remove(removed.toArray());
+				}
+				if (!inserted.isEmpty()) {
+					int index = 0;
+					for (final T row : newRows.values()) {
+						if (inserted.contains(row)) {
+							viewer.insert(row, index);
+						}
+						index++;
+					}
+				}
+				for (final Object row : modified) {
+					viewer.update(row, null);
+				}
+			}
+		} finally {
+			control.setRedraw(true);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the rows kept from the old rows are in the
+	 *         same relative order in the new rows.
+	 */
+	private boolean keptOrderUnchanged(final Map<K, T> oldRows, final Map<K, T> newRows) {
+		final Iterator<K> oldKeys = oldRows.keySet().iterator();
+		for (final K key : newRows.keySet()) {
+			if (!oldRows.containsKey(key)) {
+				continue;
+			}
+			K oldKey;
+			do {
+				if (!oldKeys.hasNext()) {
+					return false;
+				}
+				oldKey = oldKeys.next();
+			} while (!newRows.containsKey(oldKey));
+			if (!oldKey.equals(key)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Update the cell cache and quick filters of the viewer.
+	 */
+	private void invalidate(final List<Object> removed, final Set<Object> inserted, final Set<Object> modified) {
+		final CellCache cellCache = CellCache.getExisting(viewer);
+		final List<QuickFilter<?>> quickFilters = new ArrayList<>();
+		final List<IncrementalFilter<?>> incrementalFilters = new ArrayList<>();
+		for (final ViewerFilter filter : viewer.getFilters()) {
+			if (filter instanceof QuickFilter<?>) {
+				quickFilters.add((QuickFilter<?>) filter);
+			} else if (filter instanceof IncrementalFilter<?>) {
+				incrementalFilters.add((IncrementalFilter<?>) filter);
+			}
+		}
+		for (final Object row : removed) {
+			if (cellCache != null) {
+				cellCache.invalidate(row);
+			}
+			for (final QuickFilter<?> quickFilter : quickFilters) {
+				quickFilter.remove(row);
+			}
+			for (final IncrementalFilter<?> incrementalFilter : incrementalFilters) {
+				incrementalFilter.remove(row);
+			}
+		}
+		for (final Object row : modified) {
+			if (cellCache != null) {
+				cellCache.invalidate(row);
+			}
+			for (final QuickFilter<?> quickFilter : quickFilters) {
+				quickFilter.update(row);
+			}
+			for (final IncrementalFilter<?> incrementalFilter : incrementalFilters) {
+				incrementalFilter.remove(row);
+			}
+		}
+		// inserted rows are new instances, which are indexed when first seen
+	}
+
+	@Override
+	public Object[] getElements(final Object inputElement) {
+		return rows.values().toArray();
+	}
+
+	@Override
+	public void inputChanged(final Viewer viewer, final Object oldInput, final Object newInput) {
+		this.viewer = newInput == this ? (TableViewer) viewer : null;
+	}
+
+	@Override
+	public void dispose() {
+		viewer = null;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,217 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Item;
+import org.eclipse.swt.widgets.Widget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts the errors of the label functions and decorators of a column by
+ * exception type, without flooding the log when an element fails on every
+ * paint.
+ * <p>
+ * The first error of each exception type is logged with its stack trace.
+ * Further errors of the same type are only counted and logged as a summary at
+ * most once per summary interval. Errors, which were only counted, are logged
+ * at the end of the interval, when the owner widget is disposed or with
+ * {@link #flush()}.
+ * <p>
+ * The reporter of a column built by {@link ViewerColumnBuilder} is available
+ * with {@link #forColumn(Item)} or
+ * {@link ViewerColumnBuilder#getErrorReporter()}.
+ */
+public class ErrorReporter {
+
+	public static final long DEFAULT_SUMMARY_INTERVAL_MILLIS = 60000;
+
+	private static final String DATA_KEY = ErrorReporter.class.getName();
+
+	private final Logger log = LoggerFactory.getLogger(ErrorReporter.class);
+
+	private final String column;
+
+	private final Map<Class<? extends Throwable>, ErrorCount> errorCounts = new LinkedHashMap<>();
+
+	private long summaryIntervalMillis = DEFAULT_SUMMARY_INTERVAL_MILLIS;
+
+	/**
+	 * The display to schedule the summary with, if known.
+	 */
+	private Display display;
+
+	private boolean flushScheduled;
+
+	/**
+	 * @param column
+	 *            The name of the column, used in log messages.
+	 */
+	public ErrorReporter(final String column) {
+		this.column = column;
+	}
+
+	/**
+	 * @return The error reporter of the given column or <code>null</code>, if
+	 *         it has none.
+	 */
+	public static ErrorReporter forColumn(final Item column) {
+		final Object errorReporter = column.getData(DATA_KEY);
+		return errorReporter instanceof ErrorReporter ? (ErrorReporter) errorReporter : null;
+	}
+
+	/**
+	 * Make this the error reporter of the given column.
+	 */
+	public void attachTo(final Item column) {
+		column.setData(DATA_KEY, this);
+		watch(column);
+	}
+
+	/**
+	 * Log the summaries of counted errors in the display thread of the given
+	 * owner and when it is disposed.
+	 */
+	synchronized void watch(final Widget owner) {
+		display = owner.getDisplay();
+		owner.addListener(SWT.Dispose, e -> flush());
+	}
+
+	public synchronized void setSummaryIntervalMillis(final long summaryIntervalMillis) {
+		this.summaryIntervalMillis = summaryIntervalMillis;
+	}
+
+	/**
+	 * Report an error.
+	 *
+	 * @param source
+	 *            The failed function, e.g. <code>"labelFunction"</code>.
+	 * @param element
+	 *            The element the function failed on.
+	 * @param error
+	 *            The error.
+	 */
+	public synchronized void report(final String source, final Object element, final Throwable error) {
+		final long now = System.currentTimeMillis();
+		ErrorCount errorCount = errorCounts.get(error.getClass());
+		if (errorCount == null) {
+			errorCount = new ErrorCount(now);
+			errorCounts.put(error.getClass(), errorCount);
+			errorCount.count++;
+			log.error("Could not apply {} of column {} on element: {}", source, column, element, error);
+			return;
+		}
+		errorCount.count++;
+		errorCount.unreported++;
+		if (now - errorCount.lastReport >= summaryIntervalMillis) {
+			logSummary(error.getClass(), errorCount, now);
+			log.error("Last error: Could not apply {} of column {} on element: {}: {}",
+					source, column, element, error.toString());
+		} else {
+			scheduleFlush(errorCount.lastReport + summaryIntervalMillis - now);
+		}
+	}
+
+	/**
+	 * Schedule logging the summaries after the given delay, so that they are
+	 * logged even if no further error occurs.
+	 */
+	private void scheduleFlush(final long delayMillis) {
+		final Display flushDisplay = display != null ? display : Display.getCurrent();
+		if (flushScheduled || flushDisplay == null || flushDisplay.isDisposed()) {
+			return;
+		}
+		flushScheduled = true;
+		final int delay = (int) Math.min(Integer.MAX_VALUE, Math.max(0, delayMillis));
+		// errors may be reported from background threads
+		flushDisplay.asyncExec(() -> flushDisplay.timerExec(delay, this::flushDue));
+	}
+
+	/**
+	 * Log the summaries, whose interval has ended, and schedule the others.
+	 */
+	private synchronized void flushDue() {
+		flushScheduled = false;
+		final long now = System.currentTimeMillis();
+		long nextDue = Long.MAX_VALUE;
+		for (final Map.Entry<Class<? extends Throwable>, ErrorCount> entry : errorCounts.entrySet()) {
+			final ErrorCount errorCount = entry.getValue();
+			if (errorCount.unreported > 0) {
+				final long due = errorCount.lastReport + summaryIntervalMillis;
+				if (due <= now) {
+					logSummary(entry.getKey(), errorCount, now);
+				} else {
+					nextDue = Math.min(nextDue, due);
+				}
+			}
+		}
+		if (nextDue != Long.MAX_VALUE) {
+			scheduleFlush(nextDue - now);
+		}
+	}
+
+	/**
+	 * Log a summary of all errors not yet reported.
+	 */
+	public synchronized void flush() {
+		final long now = System.currentTimeMillis();
+		for (final Map.Entry<Class<? extends Throwable>, ErrorCount> entry : errorCounts.entrySet()) {
+			if (entry.getValue().unreported > 0) {
+				logSummary(entry.getKey(), entry.getValue(), now);
+			}
+		}
+	}
+
+	private void logSummary(final Class<? extends Throwable> type, final ErrorCount errorCount, final long now) {
+		log.error("{} more errors of type {} in column {} ({} in total)",
+				errorCount.unreported, type.getName(), column, errorCount.count);
+		errorCount.unreported = 0;
+		errorCount.lastReport = now;
+	}
+
+	/**
+	 * @return The number of errors of each exception type since creation or
+	 *         the last {@link #reset()}.
+	 */
+	public synchronized Map<Class<? extends Throwable>, Long> getErrorCounts() {
+		final Map<Class<? extends Throwable>, Long> counts = new LinkedHashMap<>();
+		for (final Map.Entry<Class<? extends Throwable>, ErrorCount> entry : errorCounts.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().count);
+		}
+		return counts;
+	}
+
+	/**
+	 * @return The number of all errors since creation or the last
+	 *         {@link #reset()}.
+	 */
+	public synchronized long getErrorCount() {
+		long count = 0;
+		for (final ErrorCount errorCount : errorCounts.values()) {
+			count += errorCount.count;
+		}
+		return count;
+	}
+
+	/**
+	 * Reset all counters. The next error of each type is logged with its stack
+	 * trace again.
+	 */
+	public synchronized void reset() {
+		errorCounts.clear();
+	}
+
+	private static final class ErrorCount {
+		private long count;
+		private long unreported;
+		private long lastReport;
+
+		ErrorCount(final long lastReport) {
+			this.lastReport = lastReport;
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontData;
+import org.eclipse.swt.widgets.Control;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates and caches fonts, which are disposed together with the owner
+ * control. The same instance can be shared by all columns of a viewer.
+ * <p>
+ * The given {@link FontData} is used as cache key and must not be modified
+ * afterwards.
+ */
+public class FontProvider implements Function<FontData, Font> {
+
+	private final Logger log = LoggerFactory.getLogger(FontProvider.class);
+
+	private final Map<FontData, Font> fontCache = new LinkedHashMap<>();
+
+	private final Control owner;
+
+	public FontProvider(final Control owner) {
+		this.owner = owner;
+		owner.addDisposeListener(new DisposeListener() {
+			@Override
+			public void widgetDisposed(final DisposeEvent arg0) {
+				log.debug("Disposing {} created fonts", fontCache.size());
+				for (final Font font : fontCache.values()) {
+					font.dispose();
+				}
+				fontCache.clear();
+			}
+		});
+	}
+
+	@Override
+	public Font apply(final FontData fontData) {
+		if (fontData == null) {
+			return null;
+		} else {
+			final Font cached = fontCache.get(fontData);
+			if (cached == null) {
+				log.debug("Creating font {}", fontData);
+				final Font font = new Font(owner.getDisplay(), fontData);
+				fontCache.put(fontData, font);
+				return font;
+			} else {
+				return cached;
+			}
+		}
+	}
+
+}
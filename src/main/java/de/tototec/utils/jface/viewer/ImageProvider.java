@@ -0,0 +1,63 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Control;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates and caches images from {@link ImageDescriptor}s, which are disposed
+ * together with the owner control. The same instance can be shared by all
+ * columns of a viewer.
+ * <p>
+ * Image descriptors are used as cache keys, so they should implement
+ * {@link Object#equals(Object)} like the descriptors created from files and
+ * URLs do.
+ */
+public class ImageProvider implements Function<ImageDescriptor, Image> {
+
+	private final Logger log = LoggerFactory.getLogger(ImageProvider.class);
+
+	private final Map<ImageDescriptor, Image> imageCache = new LinkedHashMap<>();
+
+	private final Control owner;
+
+	public ImageProvider(final Control owner) {
+		this.owner = owner;
+		owner.addDisposeListener(new DisposeListener() {
+			@Override
+			public void widgetDisposed(final DisposeEvent arg0) {
+				log.debug("Disposing {} created images", imageCache.size());
+				for (final Image image : imageCache.values()) {
+					image.dispose();
+				}
+				imageCache.clear();
+			}
+		});
+	}
+
+	@Override
+	public Image apply(final ImageDescriptor imageDescriptor) {
+		if (imageDescriptor == null) {
+			return null;
+		} else {
+			final Image cached = imageCache.get(imageDescriptor);
+			if (cached == null) {
+				log.debug("Creating image {}", imageDescriptor);
+				final Image image = imageDescriptor.createImage(true, owner.getDisplay());
+				imageCache.put(imageDescriptor, image);
+				return image;
+			} else {
+				return cached;
+			}
+		}
+	}
+
+}
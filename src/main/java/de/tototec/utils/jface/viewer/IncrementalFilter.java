@@ -0,0 +1,249 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.eclipse.jface.viewers.IContentProvider;
+import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * A filter, that remembers the result of its predicate per element and
+ * optionally evaluates a changed predicate in the background.
+ * <p>
+ * When the predicate is changed with {@link #setPredicate(Predicate, boolean)}
+ * and the new predicate is only narrower than the previous one, e.g. after
+ * the user typed another character into a search field, only the elements,
+ * which passed the previous predicate, are tested again.
+ * <p>
+ * With an executor, the elements are tested in chunks in the background. The
+ * previous predicate stays in effect, until the result of the new one is
+ * complete and applied at once with a single refresh of the viewer. Elements
+ * not known at that time, e.g. children of tree elements or added elements,
+ * are tested in the display thread, when the viewer asks for them.
+ * <p>
+ * Results are kept until the predicate changes. Removed or changed elements
+ * must be forgotten with {@link #remove(Object)}, which
+ * {@link DeltaContentProvider} and {@link RowStream} already do.
+ */
+public class IncrementalFilter<T> extends ViewerFilter {
+
+	public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+	private final ErrorReporter errorReporter = new ErrorReporter("filter");
+
+	private final ExecutorService executor;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private StructuredViewer viewer;
+
+	private Predicate<? super T> predicate;
+
+	/**
+	 * The results of the current predicate by element.
+	 */
+	private Map<Object, Boolean> results = new IdentityHashMap<>();
+
+	/**
+	 * Incremented for each new predicate, to cancel previous evaluations.
+	 */
+	private volatile int generation;
+
+	private final List<Future<?>> running = new ArrayList<>();
+
+	/**
+	 * @param executor
+	 *            The executor to test the elements with or <code>null</code>
+	 *            to test them in the display thread.
+	 */
+	public IncrementalFilter(final ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * @return The error reporter counting the failures of the predicate.
+	 *         Elements, on which the predicate failed, are rejected.
+	 */
+	public ErrorReporter getErrorReporter() {
+		return errorReporter;
+	}
+
+	/**
+	 * Set the number of elements tested by each background task.
+	 */
+	public void setChunkSize(final int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be positive");
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Forget the result of the given element, e.g. after it was removed from
+	 * the viewer or changed. It is tested again, when the viewer asks for it.
+	 */
+	public void remove(final Object element) {
+		results.remove(element);
+	}
+
+	/**
+	 * Change the predicate and refresh the viewer.
+	 *
+	 * @param predicate
+	 *            The new predicate or <code>null</code> to select all
+	 *            elements.
+	 * @param narrowing
+	 *            <code>true</code>, if the new predicate only rejects
+	 *            elements, which the previous predicate accepted, but accepts
+	 *            no element, which it rejected.
+	 */
+	public void setPredicate(final Predicate<? super T> predicate, final boolean narrowing) {
+		cancel();
+		final boolean narrower = narrowing && this.predicate != null && predicate != null;
+		if (viewer == null || executor == null || predicate == null) {
+			final Map<Object, Boolean> newResults = new IdentityHashMap<>();
+			if (narrower) {
+				// rejected elements stay rejected, accepted ones are tested again on demand
+				for (final Map.Entry<Object, Boolean> entry : results.entrySet()) {
+					if (!entry.getValue()) {
+						newResults.put(entry.getKey(), Boolean.FALSE);
+					}
+				}
+			}
+			apply(predicate, newResults);
+			return;
+		}
+
+		final Object[] candidates;
+		if (narrower) {
+			final List<Object> accepted = new ArrayList<>();
+			for (final Map.Entry<Object, Boolean> entry : results.entrySet()) {
+				if (entry.getValue()) {
+					accepted.add(entry.getKey());
+				}
+			}
+			candidates = accepted.toArray();
+		} else {
+			candidates = allElements();
+		}
+		final Map<Object, Boolean> previous = narrower ? results : null;
+		testAsync(predicate, candidates, previous);
+	}
+
+	/**
+	 * Test the candidates in chunks with the executor and apply the result in
+	 * the display thread.
+	 *
+	 * @param previous
+	 *            The previous results, whose rejected elements stay rejected,
+	 *            or <code>null</code>.
+	 */
+	private void testAsync(final Predicate<? super T> predicate, final Object[] candidates,
+			final Map<Object, Boolean> previous) {
+		final int testGeneration = ++generation;
+		final boolean[] accepted = new boolean[candidates.length];
+		final int chunks = Math.max(1, (candidates.length + chunkSize - 1) / chunkSize);
+		final AtomicInteger remaining = new AtomicInteger(chunks);
+		final Display display = viewer.getControl().getDisplay();
+
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			final int from = chunk * chunkSize;
+			final int to = Math.min(candidates.length, from + chunkSize);
+			running.add(executor.submit(() -> {
+				for (int i = from; i < to; i++) {
+					if (testGeneration != generation) {
+						return;
+					}
+					accepted[i] = test(predicate, candidates[i]);
+				}
+				if (remaining.decrementAndGet() == 0 && !display.isDisposed()) {
+					display.asyncExec(() -> {
+						if (testGeneration != generation) {
+							return;
+						}
+						running.clear();
+						final Map<Object, Boolean> newResults = new IdentityHashMap<>();
+						if (previous != null) {
+							for (final Map.Entry<Object, Boolean> entry : previous.entrySet()) {
+								if (!entry.getValue()) {
+									newResults.put(entry.getKey(), Boolean.FALSE);
+								}
+							}
+						}
+						for (int i = 0; i < candidates.length; i++) {
+							newResults.put(candidates[i], accepted[i]);
+						}
+						apply(predicate, newResults);
+					});
+				}
+			}));
+		}
+	}
+
+	private void apply(final Predicate<? super T> predicate, final Map<Object, Boolean> results) {
+		this.predicate = predicate;
+		this.results = results;
+		if (viewer != null && !viewer.getControl().isDisposed()) {
+			VirtualContentProvider.refreshViewer(viewer);
+		}
+	}
+
+	private void cancel() {
+		generation++;
+		for (final Future<?> future : running) {
+			future.cancel(false);
+		}
+		running.clear();
+	}
+
+	/**
+	 * @return All top level elements of the viewer, unfiltered.
+	 */
+	private Object[] allElements() {
+		final IContentProvider contentProvider = viewer.getContentProvider();
+		if (contentProvider instanceof VirtualContentProvider<?>) {
+			return ((VirtualContentProvider<?>) contentProvider).getAllElements();
+		} else if (contentProvider instanceof IStructuredContentProvider && viewer.getInput() != null) {
+			return ((IStructuredContentProvider) contentProvider).getElements(viewer.getInput());
+		}
+		return new Object[0];
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean test(final Predicate<? super T> predicate, final Object element) {
+		try {
+			return predicate.test((T) element);
+		} catch (final RuntimeException e) {
+			errorReporter.report("predicate", element, e);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean select(final Viewer viewer, final Object parentElement, final Object element) {
+		if (this.viewer == null && viewer instanceof StructuredViewer) {
+			this.viewer = (StructuredViewer) viewer;
+			errorReporter.watch(viewer.getControl());
+		}
+		if (predicate == null) {
+			return true;
+		}
+		Boolean result = results.get(element);
+		if (result == null) {
+			result = test(predicate, element);
+			results.put(element, result);
+		}
+		return result;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.function.Function;
+
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * Open addressing hash map from packed <code>int</code> RGB values to colors,
+ * in front of a color provider. Once a color is cached, lookups do not
+ * allocate.
+ * <p>
+ * The colors are owned by the color provider. If it disposes a color, the
+ * color is requested again on the next lookup.
+ */
+class IntColorCache {
+
+	private static final int EMPTY = -1;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * If more colors are cached, the cache is cleared, to not hold on to
+	 * arbitrary many colors of e.g. gradients.
+	 */
+	private static final int MAX_SIZE = 4096;
+
+	private final Function<RGB, Color> colorProvider;
+
+	private int[] keys;
+	private Color[] values;
+	private int size;
+
+	IntColorCache(final Function<RGB, Color> colorProvider) {
+		this.colorProvider = colorProvider;
+		clear();
+	}
+
+	private void clear() {
+		keys = newKeys(INITIAL_CAPACITY);
+		values = new Color[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	private static int[] newKeys(final int capacity) {
+		final int[] keys = new int[capacity];
+		for (int i = 0; i < capacity; i++) {
+			keys[i] = EMPTY;
+		}
+		return keys;
+	}
+
+	/**
+	 * @param rgb
+	 *            The packed RGB value or {@link IntColorDecorator#NONE}.
+	 * @return The color or <code>null</code>.
+	 */
+	Color get(final int rgb) {
+		if (rgb == IntColorDecorator.NONE) {
+			return null;
+		}
+		final int mask = keys.length - 1;
+		int index = hash(rgb) & mask;
+		while (keys[index] != EMPTY) {
+			if (keys[index] == rgb) {
+				final Color color = values[index];
+				if (color != null && !color.isDisposed()) {
+					return color;
+				}
+				values[index] = request(rgb);
+				return values[index];
+			}
+			index = (index + 1) & mask;
+		}
+
+		final Color color = request(rgb);
+		if (size >= MAX_SIZE) {
+			clear();
+			index = hash(rgb) & (keys.length - 1);
+		}
+		keys[index] = rgb;
+		values[index] = color;
+		if (++size * 2 > keys.length) {
+			grow();
+		}
+		return color;
+	}
+
+	private Color request(final int rgb) {
+		return colorProvider.apply(
+				new RGB(IntColorDecorator.red(rgb), IntColorDecorator.green(rgb), IntColorDecorator.blue(rgb)));
+	}
+
+	private static int hash(final int rgb) {
+		final int h = rgb * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void grow() {
+		final int[] oldKeys = keys;
+		final Color[] oldValues = values;
+		keys = newKeys(oldKeys.length * 2);
+		values = new Color[oldKeys.length * 2];
+		final int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int index = hash(oldKeys[i]) & mask;
+				while (keys[index] != EMPTY) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package de.tototec.utils.jface.viewer;
+
+import org.eclipse.swt.graphics.Color;
+
+/**
+ * A color decorator working on packed <code>int</code> RGB values
+ * (<code>0xRRGGBB</code>), which avoids the allocation of
+ * {@link org.eclipse.swt.graphics.RGB} instances while painting.
+ *
+ * @param <T>
+ *            The element type.
+ */
+public interface IntColorDecorator<T> {
+
+	/**
+	 * Represents the absence of a color, e.g. <code>null</code> as base color
+	 * or to use the default color.
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * @param element
+	 *            The element.
+	 * @param rgb
+	 *            The packed base color or {@link #NONE}.
+	 * @return The packed decorated color or {@link #NONE}.
+	 */
+	public int apply(T element, int rgb);
+
+	public static int rgb(final int red, final int green, final int blue) {
+		return (red & 0xff) << 16 | (green & 0xff) << 8 | blue & 0xff;
+	}
+
+	public static int red(final int rgb) {
+		return rgb >> 16 & 0xff;
+	}
+
+	public static int green(final int rgb) {
+		return rgb >> 8 & 0xff;
+	}
+
+	public static int blue(final int rgb) {
+		return rgb & 0xff;
+	}
+
+	/**
+	 * @return The packed RGB value of the given color or {@link #NONE}.
+	 */
+	public static int rgb(final Color color) {
+		return color == null ? NONE : rgb(color.getRed(), color.getGreen(), color.getBlue());
+	}
+
+}
@@ -0,0 +1,175 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.jface.viewers.DecorationOverlayIcon;
+import org.eclipse.jface.viewers.IDecoration;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Control;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates and caches composite images, consisting of a base image and a set
+ * of overlay images, e.g. to mark the state of an element. Each combination
+ * of base image and overlay keys is drawn only once. All composite images
+ * are disposed together with the owner control, or when their base image was
+ * disposed.
+ * <p>
+ * Overlays are registered with a key and a position, one of
+ * {@link IDecoration#TOP_LEFT}, {@link IDecoration#TOP_RIGHT},
+ * {@link IDecoration#BOTTOM_LEFT}, {@link IDecoration#BOTTOM_RIGHT} or
+ * {@link IDecoration#UNDERLAY}. If multiple requested overlays share the same
+ * position, the one registered last is drawn.
+ */
+public class OverlayImageProvider implements BiFunction<Image, Set<String>, Image> {
+
+	private final Logger log = LoggerFactory.getLogger(OverlayImageProvider.class);
+
+	private final Map<String, Overlay> overlays = new LinkedHashMap<>();
+
+	/**
+	 * Composite images by base image (identity) and overlay keys.
+	 */
+	private final Map<Image, Map<Set<String>, Image>> imageCache = new IdentityHashMap<>();
+
+	private final Control owner;
+
+	public OverlayImageProvider(final Control owner) {
+		this.owner = owner;
+		owner.addDisposeListener(new DisposeListener() {
+			@Override
+			public void widgetDisposed(final DisposeEvent arg0) {
+				disposeImages();
+			}
+		});
+	}
+
+	/**
+	 * Register an overlay image. Overlays should be registered before the
+	 * first composite image is requested, as already created composite images
+	 * are not updated.
+	 *
+	 * @param key
+	 *            The key used to request the overlay.
+	 * @param overlay
+	 *            The overlay image.
+	 * @param position
+	 *            The position of the overlay, e.g.
+	 *            {@link IDecoration#BOTTOM_RIGHT}.
+	 */
+	public OverlayImageProvider addOverlay(final String key, final ImageDescriptor overlay, final int position) {
+		if (position < IDecoration.TOP_LEFT || position > IDecoration.UNDERLAY) {
+			throw new IllegalArgumentException("Unsupported overlay position: " + position);
+		}
+		overlays.remove(key);
+		overlays.put(key, new Overlay(overlay, position));
+		return this;
+	}
+
+	/**
+	 * @return The composite image of the given base image and overlays, or the
+	 *         base image itself, if no known overlay is requested.
+	 */
+	@Override
+	public Image apply(final Image base, final Set<String> overlayKeys) {
+		if (base == null || base.isDisposed() || overlayKeys == null || overlayKeys.isEmpty()) {
+			return base;
+		}
+		Map<Set<String>, Image> images = imageCache.get(base);
+		if (images == null) {
+			// a new base image may replace a disposed one
+			pruneDisposed();
+			images = new LinkedHashMap<>();
+			imageCache.put(base, images);
+		}
+		final Image cached = images.get(overlayKeys);
+		if (cached != null) {
+			return cached;
+		}
+
+		final ImageDescriptor[] descriptors = new ImageDescriptor[IDecoration.UNDERLAY + 1];
+		boolean found = false;
+		for (final Entry<String, Overlay> overlay : overlays.entrySet()) {
+			if (overlayKeys.contains(overlay.getKey())) {
+				descriptors[overlay.getValue().position] = overlay.getValue().image;
+				found = true;
+			}
+		}
+		final Image image;
+		if (found) {
+			log.debug("Creating overlay image for {}", overlayKeys);
+			image = new DecorationOverlayIcon(base, descriptors).createImage(true, owner.getDisplay());
+		} else {
+			log.debug("No overlay registered for {}", overlayKeys);
+			image = base;
+		}
+		// the requested set may be mutable
+		images.put(new TreeSet<>(overlayKeys), image);
+		return image;
+	}
+
+	/**
+	 * Dispose the composite images of disposed base images.
+	 */
+	private void pruneDisposed() {
+		int count = 0;
+		for (final Iterator<Entry<Image, Map<Set<String>, Image>>> it = imageCache.entrySet().iterator(); it
+				.hasNext();) {
+			final Entry<Image, Map<Set<String>, Image>> images = it.next();
+			if (images.getKey().isDisposed()) {
+				count += dispose(images);
+				it.remove();
+			}
+		}
+		if (count > 0) {
+			log.debug("Disposed {} overlay images of disposed base images", count);
+		}
+	}
+
+	private void disposeImages() {
+		int count = 0;
+		for (final Entry<Image, Map<Set<String>, Image>> images : imageCache.entrySet()) {
+			count += dispose(images);
+		}
+		log.debug("Disposed {} created overlay images", count);
+		imageCache.clear();
+	}
+
+	/**
+	 * Dispose the composite images of the given base image.
+	 *
+	 * @return The number of disposed images.
+	 */
+	private static int dispose(final Entry<Image, Map<Set<String>, Image>> images) {
+		int count = 0;
+		for (final Image image : images.getValue().values()) {
+			if (image != images.getKey() && !image.isDisposed()) {
+				image.dispose();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static final class Overlay {
+		private final ImageDescriptor image;
+		private final int position;
+
+		Overlay(final ImageDescriptor image, final int position) {
+			this.image = image;
+			this.position = position;
+		}
+	}
+
+}
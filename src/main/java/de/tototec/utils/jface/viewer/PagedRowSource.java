@@ -0,0 +1,337 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * A {@link RowSource}, that loads its rows in pages of fixed size in the
+ * background, e.g. from a database.
+ * <p>
+ * Rows of pages not yet loaded are returned as placeholders and the page is
+ * loaded with the given executor. Additional pages ahead of the current scroll
+ * direction are prefetched. Only a bounded number of pages is kept, evicting
+ * the least recently used ones. When a page was loaded, a
+ * {@link VirtualContentProvider} clears the affected items, so that their rows
+ * are requested again.
+ * <p>
+ * All methods must be called in the display thread. Only the page loader is
+ * applied in the background. Failures of the page loader are counted by an
+ * {@link ErrorReporter}, see {@link #getErrorReporter()}, and a failed page
+ * is not loaded again before the retry delay has passed.
+ * <p>
+ * Filtering and sorting would need all rows, so the viewer does not filter and
+ * sort the rows of a paged row source. Instead, the page loader must filter and
+ * sort, e.g. by querying the database accordingly. A query handler, see
+ * {@link #setQueryHandler(Consumer)}, is notified whenever the filters or the
+ * comparator of the viewer changed, e.g. by clicking the header of a
+ * {@link ColumnSorter}, and the pages are reloaded afterwards.
+ */
+public class PagedRowSource<T> implements RowSource<T> {
+
+	public static final int DEFAULT_PAGE_SIZE = 256;
+	public static final int DEFAULT_MAX_PAGES = 64;
+	public static final int DEFAULT_READ_AHEAD = 2;
+	public static final long DEFAULT_RETRY_DELAY_MILLIS = 10000;
+
+	private final ErrorReporter errorReporter = new ErrorReporter("rows");
+
+	private final BiFunction<Integer, Integer, List<T>> pageLoader;
+
+	private final IntFunction<T> placeholder;
+
+	private final ExecutorService executor;
+
+	private int size;
+
+	private int pageSize = DEFAULT_PAGE_SIZE;
+
+	private int maxPages = DEFAULT_MAX_PAGES;
+
+	private int readAhead = DEFAULT_READ_AHEAD;
+
+	/**
+	 * The loaded pages by page number, least recently used first.
+	 */
+	private final Map<Integer, List<T>> pages = new LinkedHashMap<Integer, List<T>>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Integer, List<T>> eldest) {
+			return size() > maxPages;
+		}
+	};
+
+	/**
+	 * The loading pages by page number, oldest request first.
+	 */
+	private final Map<Integer, Future<?>> pending = new LinkedHashMap<>();
+
+	/**
+	 * The time, after which failed pages may be loaded again, by page number.
+	 */
+	private final Map<Integer, Long> failed = new LinkedHashMap<>();
+
+	private long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+
+	/**
+	 * Incremented by {@link #reload()}, to ignore pages of previous loads.
+	 */
+	private int generation;
+
+	private int lastPage;
+
+	private int scrollDirection = 1;
+
+	private Procedure2<Integer, Integer> loadListener;
+
+	private Consumer<StructuredViewer> queryHandler;
+
+	/**
+	 * @param size
+	 *            The number of rows.
+	 * @param pageLoader
+	 *            Loads the rows of a page, given the index of the first row
+	 *            and the number of rows. Applied with the executor.
+	 * @param placeholder
+	 *            Creates the placeholder for the row at the given index, while
+	 *            its page is loading.
+	 * @param executor
+	 *            The executor to load pages with.
+	 */
+	public PagedRowSource(final int size, final BiFunction<Integer, Integer, List<T>> pageLoader,
+			final IntFunction<T> placeholder, final ExecutorService executor) {
+		this.size = size;
+		this.pageLoader = pageLoader;
+		this.placeholder = placeholder;
+		this.executor = executor;
+	}
+
+	/**
+	 * Set the number of rows per page. Drops all loaded pages.
+	 */
+	public void setPageSize(final int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be positive");
+		}
+		this.pageSize = pageSize;
+		reload();
+	}
+
+	/**
+	 * Set the maximal number of loaded pages to keep.
+	 */
+	public void setMaxPages(final int maxPages) {
+		if (maxPages < 1) {
+			throw new IllegalArgumentException("maxPages must be positive");
+		}
+		this.maxPages = maxPages;
+	}
+
+	/**
+	 * Set the number of pages to prefetch ahead of the scroll direction.
+	 */
+	public void setReadAhead(final int readAhead) {
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * Set the minimal time before a page, whose loading failed, is loaded
+	 * again.
+	 */
+	public void setRetryDelayMillis(final long retryDelayMillis) {
+		this.retryDelayMillis = retryDelayMillis;
+	}
+
+	/**
+	 * @return The error reporter counting the failures of the page loader.
+	 */
+	public ErrorReporter getErrorReporter() {
+		return errorReporter;
+	}
+
+	/**
+	 * Change the number of rows, e.g. after the underlying data changed. Call
+	 * {@link VirtualContentProvider#refresh()} afterwards.
+	 */
+	public void setSize(final int size) {
+		this.size = size;
+	}
+
+	/**
+	 * Set the handler, which adapts the page loader to the filters and the
+	 * comparator of the viewer, e.g. to {@link ColumnSorter#getSortColumn()}
+	 * and {@link ColumnSorter#getDirection()}. It is called in the display
+	 * thread, whenever the viewer is refreshed with a
+	 * {@link VirtualContentProvider}, and may change the number of rows with
+	 * {@link #setSize(int)}. All pages are reloaded afterwards.
+	 * <p>
+	 * Without a query handler, the filters and the comparator of the viewer
+	 * are ignored.
+	 */
+	public void setQueryHandler(final Consumer<StructuredViewer> queryHandler) {
+		this.queryHandler = queryHandler;
+	}
+
+	/**
+	 * @return <code>true</code> if a query handler is set.
+	 */
+	boolean hasQueryHandler() {
+		return queryHandler != null;
+	}
+
+	/**
+	 * Let the query handler adapt the page loader to the given viewer and
+	 * reload all pages.
+	 */
+	void queryChanged(final StructuredViewer viewer) {
+		if (queryHandler != null) {
+			queryHandler.accept(viewer);
+			reload();
+		}
+	}
+
+	/**
+	 * Drop all loaded pages and cancel all pending loads, e.g. after the
+	 * underlying data changed. Call {@link VirtualContentProvider#refresh()}
+	 * afterwards.
+	 */
+	public void reload() {
+		generation++;
+		for (final Future<?> future : pending.values()) {
+			future.cancel(true);
+		}
+		pending.clear();
+		pages.clear();
+		failed.clear();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public T get(final int index) {
+		final int page = index / pageSize;
+		if (page != lastPage) {
+			scrollDirection = page > lastPage ? 1 : -1;
+			lastPage = page;
+		}
+
+		final List<T> rows = pages.get(page);
+		final T row;
+		if (rows != null && index - page * pageSize < rows.size()) {
+			row = rows.get(index - page * pageSize);
+		} else {
+			load(page);
+			row = placeholder.apply(index);
+		}
+
+		for (int i = 1; i <= readAhead; i++) {
+			final int aheadPage = page + i * scrollDirection;
+			if (aheadPage >= 0 && aheadPage * pageSize < size && !pages.containsKey(aheadPage)) {
+				load(aheadPage);
+			}
+		}
+		return row;
+	}
+
+	/**
+	 * @return <code>true</code> if the row at the given index is loaded.
+	 */
+	public boolean isLoaded(final int index) {
+		return pages.containsKey(index / pageSize);
+	}
+
+	/**
+	 * @return The row at the given index, if it is loaded, otherwise
+	 *         <code>null</code>. Unlike {@link #get(int)}, neither loads pages
+	 *         nor affects the read-ahead direction.
+	 */
+	T getLoaded(final int index) {
+		final int page = index / pageSize;
+		final List<T> rows = pages.get(page);
+		return rows != null && index - page * pageSize < rows.size() ? rows.get(index - page * pageSize) : null;
+	}
+
+	/**
+	 * Notify the given listener with the first and last (exclusive) row index
+	 * of each loaded page.
+	 */
+	void setLoadListener(final Procedure2<Integer, Integer> loadListener) {
+		this.loadListener = loadListener;
+	}
+
+	private void load(final int page) {
+		if (pending.containsKey(page)) {
+			return;
+		}
+		final Long retryAt = failed.get(page);
+		if (retryAt != null) {
+			if (System.currentTimeMillis() < retryAt) {
+				return;
+			}
+			failed.remove(page);
+		}
+		// loads requested long ago are most likely scrolled out of view
+		final int maxPending = 2 * (readAhead + 1);
+		final Iterator<Future<?>> it = pending.values().iterator();
+		while (pending.size() >= maxPending && it.hasNext()) {
+			it.next().cancel(false);
+			it.remove();
+		}
+
+		final Display display = Display.getCurrent();
+		final int loadGeneration = generation;
+		final int from = page * pageSize;
+		final int count = Math.min(pageSize, size - from);
+		// set before the task can complete, as completion is handled in the display thread
+		final AtomicReference<Future<?>> future = new AtomicReference<>();
+		future.set(executor.submit(() -> {
+			try {
+				final List<T> rows = pageLoader.apply(from, count);
+				display.asyncExec(() -> pageLoaded(loadGeneration, page, future.get(), rows, null));
+			} catch (final RuntimeException e) {
+				display.asyncExec(() -> pageLoaded(loadGeneration, page, future.get(), null, e));
+			}
+		}));
+		pending.put(page, future.get());
+	}
+
+	/**
+	 * @param future
+	 *            The future of the load, which is only still pending, if it
+	 *            was not cancelled and replaced by a newer load of the page.
+	 * @param error
+	 *            The error, if loading failed.
+	 */
+	private void pageLoaded(final int loadGeneration, final int page, final Future<?> future, final List<T> rows,
+			final RuntimeException error) {
+		if (loadGeneration != generation || !pending.remove(page, future)) {
+			return;
+		}
+		if (error != null) {
+			failed.put(page, System.currentTimeMillis() + retryDelayMillis);
+			errorReporter.report("pageLoader", "rows from " + page * pageSize, error);
+			return;
+		}
+		if (rows != null) {
+			pages.put(page, rows);
+			if (loadListener != null) {
+				loadListener.apply(page * pageSize, Math.min(size, page * pageSize + rows.size()));
+			}
+		}
+	}
+
+}
\ No newline at end of file
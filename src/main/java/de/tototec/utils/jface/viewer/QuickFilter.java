@@ -0,0 +1,343 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.jface.viewers.CellLabelProvider;
+import org.eclipse.jface.viewers.ColumnViewer;
+import org.eclipse.jface.viewers.IBaseLabelProvider;
+import org.eclipse.jface.viewers.IContentProvider;
+import org.eclipse.jface.viewers.ILabelProvider;
+import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.Tree;
+
+/**
+ * A filter, that selects the elements containing a query text in the label
+ * text of any column, ignoring case.
+ * <p>
+ * The label texts of each element are requested only once and indexed by
+ * their trigrams. A query is answered by verifying only the elements
+ * containing its rarest trigram, or, for queries shorter than three
+ * characters, by searching the indexed texts, so that no label provider is
+ * called per keystroke.
+ * <p>
+ * The index is built with the top level elements on the first query. Other
+ * elements, e.g. children of tree elements or added elements, are indexed
+ * when the viewer asks for them. Changed elements must be re-indexed with
+ * {@link #update(Object)} before the viewer is refreshed. In trees, each
+ * element is matched by its own texts only. The index is dropped, when the
+ * input of the viewer changes.
+ *
+ * @see TableViewerBuilder#addQuickFilter()
+ * @see TreeViewerBuilder#addQuickFilter()
+ */
+public class QuickFilter<T> extends ViewerFilter {
+
+	private static final String SEPARATOR = "\n";
+
+	private ColumnViewer viewer;
+
+	private final Map<Object, Integer> rowIds = new IdentityHashMap<>();
+
+	/**
+	 * The indexed texts by row id, <code>null</code> for removed rows.
+	 */
+	private final List<String> rowTexts = new ArrayList<>();
+
+	/**
+	 * The ids of the rows containing each trigram, in ascending order.
+	 */
+	private final Map<Long, IntList> postings = new HashMap<>();
+
+	private int removedRows;
+
+	private boolean built;
+
+	private String query = "";
+
+	/**
+	 * The input of the viewer, whose elements are indexed.
+	 */
+	private Object indexedInput;
+
+	/**
+	 * The ids of the rows matching the query or <code>null</code> if all rows
+	 * match.
+	 */
+	private BitSet matches;
+
+	public QuickFilter(final ColumnViewer viewer) {
+		this.viewer = viewer;
+	}
+
+	/**
+	 * Create a filter, which is attached to the viewer by the viewer builder.
+	 */
+	QuickFilter() {
+	}
+
+	void attach(final ColumnViewer viewer) {
+		this.viewer = viewer;
+	}
+
+	/**
+	 * Set the query text and refresh the viewer.
+	 *
+	 * @param query
+	 *            The text to search or <code>null</code> or an empty string
+	 *            to select all elements.
+	 */
+	public void setQuery(final String query) {
+		final String newQuery = query == null ? "" : query.toLowerCase(Locale.ROOT);
+		if (newQuery.equals(this.query)) {
+			return;
+		}
+		boolean narrowing = matches != null && newQuery.contains(this.query);
+		this.query = newQuery;
+
+		if (newQuery.isEmpty()) {
+			matches = null;
+		} else {
+			checkInput();
+			if (!built) {
+				// rebuilding assigns new row ids, so previous matches are meaningless
+				matches = null;
+				narrowing = false;
+				rebuildIndex();
+			}
+			matches = findMatches(newQuery, narrowing ? matches : null);
+		}
+		if (viewer != null && !viewer.getControl().isDisposed()) {
+			VirtualContentProvider.refreshViewer(viewer);
+		}
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * Index the given element again, e.g. after its label texts changed.
+	 */
+	public void update(final Object element) {
+		remove(element);
+		index(element);
+	}
+
+	/**
+	 * Remove the given element from the index.
+	 */
+	public void remove(final Object element) {
+		final Integer id = rowIds.remove(element);
+		if (id != null) {
+			rowTexts.set(id, null);
+			removedRows++;
+			// the postings still contain removed rows, so rebuild before they dominate
+			if (removedRows > rowTexts.size() / 2) {
+				built = false;
+			}
+		}
+	}
+
+	/**
+	 * Drop the index. It is built again with the next query.
+	 */
+	public void clear() {
+		rowIds.clear();
+		rowTexts.clear();
+		postings.clear();
+		removedRows = 0;
+		built = false;
+		if (matches != null) {
+			// elements are matched again, when they are indexed
+			matches = new BitSet();
+		}
+	}
+
+	/**
+	 * Drop the index, if the input of the viewer changed since it was built,
+	 * so that the elements of previous inputs are not kept.
+	 */
+	private void checkInput() {
+		final Object input = viewer != null ? viewer.getInput() : null;
+		if (input != indexedInput) {
+			indexedInput = input;
+			clear();
+		}
+	}
+
+	private void rebuildIndex() {
+		clear();
+		built = true;
+		if (viewer == null) {
+			return;
+		}
+		final IContentProvider contentProvider = viewer.getContentProvider();
+		final Object[] elements;
+		if (contentProvider instanceof VirtualContentProvider<?>) {
+			elements = ((VirtualContentProvider<?>) contentProvider).getAllElements();
+		} else if (contentProvider instanceof IStructuredContentProvider && viewer.getInput() != null) {
+			elements = ((IStructuredContentProvider) contentProvider).getElements(viewer.getInput());
+		} else {
+			elements = new Object[0];
+		}
+		for (final Object element : elements) {
+			index(element);
+		}
+	}
+
+	/**
+	 * @param candidates
+	 *            The rows, which can match, or <code>null</code> for all.
+	 */
+	private BitSet findMatches(final String query, final BitSet candidates) {
+		final BitSet result = new BitSet(rowTexts.size());
+		if (query.length() >= 3) {
+			IntList rarest = null;
+			for (int i = 0; i + 3 <= query.length(); i++) {
+				final IntList posting = postings.get(trigram(query, i));
+				if (posting == null) {
+					return result;
+				}
+				if (rarest == null || posting.size < rarest.size) {
+					rarest = posting;
+				}
+			}
+			for (int i = 0; i < rarest.size; i++) {
+				final int id = rarest.values[i];
+				if ((candidates == null || candidates.get(id)) && matches(id, query)) {
+					result.set(id);
+				}
+			}
+		} else if (candidates != null) {
+			for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+				if (matches(id, query)) {
+					result.set(id);
+				}
+			}
+		} else {
+			for (int id = 0; id < rowTexts.size(); id++) {
+				if (matches(id, query)) {
+					result.set(id);
+				}
+			}
+		}
+		return result;
+	}
+
+	private boolean matches(final int id, final String query) {
+		final String text = rowTexts.get(id);
+		return text != null && text.contains(query);
+	}
+
+	/**
+	 * Index the given element and, if a query is set, match it.
+	 *
+	 * @return The row id of the element.
+	 */
+	private int index(final Object element) {
+		final int id = rowTexts.size();
+		final String text = text(element);
+		rowIds.put(element, id);
+		rowTexts.add(text);
+		for (int i = 0; i + 3 <= text.length(); i++) {
+			final Long key = trigram(text, i);
+			IntList posting = postings.get(key);
+			if (posting == null) {
+				posting = new IntList();
+				postings.put(key, posting);
+			}
+			// rows are indexed in ascending order, so duplicates are adjacent
+			if (posting.size == 0 || posting.values[posting.size - 1] != id) {
+				posting.add(id);
+			}
+		}
+		if (matches != null && text.contains(query)) {
+			matches.set(id);
+		}
+		return id;
+	}
+
+	/**
+	 * @return The lower case label texts of all columns of the given element.
+	 */
+	private String text(final Object element) {
+		final StringBuilder text = new StringBuilder();
+		final int columns = columnCount();
+		if (columns == 0) {
+			final IBaseLabelProvider labelProvider = viewer.getLabelProvider();
+			if (labelProvider instanceof ILabelProvider) {
+				append(text, ((ILabelProvider) labelProvider).getText(element));
+			}
+		}
+		for (int i = 0; i < columns; i++) {
+			final CellLabelProvider labelProvider = viewer.getLabelProvider(i);
+			if (labelProvider instanceof ILabelProvider) {
+				append(text, ((ILabelProvider) labelProvider).getText(element));
+			}
+		}
+		return text.toString().toLowerCase(Locale.ROOT);
+	}
+
+	private static void append(final StringBuilder text, final String label) {
+		if (label != null) {
+			if (text.length() > 0) {
+				text.append(SEPARATOR);
+			}
+			text.append(label);
+		}
+	}
+
+	private int columnCount() {
+		final Control control = viewer.getControl();
+		if (control instanceof Table) {
+			return ((Table) control).getColumnCount();
+		} else if (control instanceof Tree) {
+			return ((Tree) control).getColumnCount();
+		}
+		return 0;
+	}
+
+	private static Long trigram(final String text, final int index) {
+		return Long.valueOf(((long) text.charAt(index) << 32)
+				| ((long) text.charAt(index + 1) << 16)
+				| text.charAt(index + 2));
+	}
+
+	@Override
+	public boolean select(final Viewer viewer, final Object parentElement, final Object element) {
+		if (matches == null) {
+			return true;
+		}
+		checkInput();
+		final Integer id = rowIds.get(element);
+		return matches.get(id != null ? id : index(element));
+	}
+
+	/**
+	 * A growable list of primitive ints.
+	 */
+	private static final class IntList {
+		private int[] values = new int[4];
+		private int size;
+
+		void add(final int value) {
+			if (size == values.length) {
+				final int[] newValues = new int[size * 2];
+				System.arraycopy(values, 0, newValues, 0, size);
+				values = newValues;
+			}
+			values[size++] = value;
+		}
+	}
+
+}
\ No newline at end of file
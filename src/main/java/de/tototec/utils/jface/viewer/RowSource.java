@@ -0,0 +1,42 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.List;
+
+/**
+ * A random-access source of the rows of a virtual table, see
+ * {@link VirtualContentProvider}.
+ * <p>
+ * Rows are only requested when they become visible, or when all rows need to
+ * be filtered or sorted.
+ */
+public interface RowSource<T> {
+
+	/**
+	 * @return The number of rows.
+	 */
+	public int size();
+
+	/**
+	 * @return The row at the given index.
+	 */
+	public T get(int index);
+
+	/**
+	 * @return A row source backed by the given list, which should support fast
+	 *         random access.
+	 */
+	public static <T> RowSource<T> of(final List<T> rows) {
+		return new RowSource<T>() {
+			@Override
+			public int size() {
+				return rows.size();
+			}
+
+			@Override
+			public T get(final int index) {
+				return rows.get(index);
+			}
+		};
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,209 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * A content provider for {@link TableViewer}s, whose rows are appended at a
+ * high rate, e.g. when tailing a log.
+ * <p>
+ * Producers in any thread {@link #push(Object)} rows into a lock-free queue.
+ * At most once per flush interval, all queued rows are added to the viewer in
+ * the display thread with a single {@link TableViewer#add(Object[])}, while
+ * redraw is suppressed. When the number of rows exceeds the row limit, the
+ * oldest rows are removed. Optionally, the table scrolls to the last added
+ * row.
+ * <p>
+ * The viewer's filters and comparator apply to the added rows as usual.
+ * <p>
+ * The viewer should use hash lookup, see
+ * {@link TableViewer#setUseHashlookup(boolean)}, as otherwise finding the
+ * items of removed and revealed rows scans all items of the table.
+ *
+ * @see TableViewerBuilder#withStreaming(RowStream)
+ */
+public class RowStream<T> implements IStructuredContentProvider {
+
+	public static final int DEFAULT_FLUSH_INTERVAL_MILLIS = 33;
+
+	private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	/**
+	 * The rows in the viewer, oldest first. Only accessed in the display
+	 * thread.
+	 */
+	private final ArrayDeque<T> rows = new ArrayDeque<>();
+
+	private final int maxRows;
+
+	private volatile TableViewer viewer;
+
+	private volatile Display display;
+
+	private volatile int flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+	private boolean autoScroll;
+
+	private long lastFlush;
+
+	/**
+	 * @param maxRows
+	 *            The maximal number of rows or <code>0</code> for no limit.
+	 */
+	public RowStream(final int maxRows) {
+		if (maxRows < 0) {
+			throw new IllegalArgumentException("maxRows must not be negative");
+		}
+		this.maxRows = maxRows;
+	}
+
+	/**
+	 * Scroll to the last added row after each flush.
+	 */
+	public void setAutoScroll(final boolean autoScroll) {
+		this.autoScroll = autoScroll;
+	}
+
+	/**
+	 * Set the minimal time between two flushes.
+	 */
+	public void setFlushIntervalMillis(final int flushIntervalMillis) {
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	/**
+	 * Append the given row. Can be called in any thread.
+	 */
+	public void push(final T row) {
+		queue.add(row);
+		scheduleFlush();
+	}
+
+	/**
+	 * Append the given rows. Can be called in any thread.
+	 */
+	public void pushAll(final Collection<? extends T> rows) {
+		queue.addAll(rows);
+		scheduleFlush();
+	}
+
+	/**
+	 * Remove all rows, including the queued ones. Must be called in the
+	 * display thread.
+	 */
+	public void clear() {
+		queue.clear();
+		rows.clear();
+		final TableViewer viewer = this.viewer;
+		if (viewer != null) {
+			viewer.refresh();
+		}
+	}
+
+	private void scheduleFlush() {
+		final Display display = this.display;
+		// without a viewer, the rows stay queued until the stream becomes an input
+		if (display == null || display.isDisposed() || !flushScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		display.asyncExec(() -> {
+			final long delay = lastFlush + flushIntervalMillis - System.currentTimeMillis();
+			if (delay > 0) {
+				display.timerExec((int) delay, this::flush);
+			} else {
+				flush();
+			}
+		});
+	}
+
+	private void flush() {
+		// rows pushed from now on need another flush
+		flushScheduled.set(false);
+		final TableViewer viewer = this.viewer;
+		if (viewer == null || viewer.getControl().isDisposed()) {
+			return;
+		}
+		lastFlush = System.currentTimeMillis();
+
+		final List<T> batch = new ArrayList<>();
+		T row;
+		while ((row = queue.poll()) != null) {
+			batch.add(row);
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		final List<T> added = maxRows > 0 && batch.size() > maxRows
+				? batch.subList(batch.size() - maxRows, batch.size())
+				: batch;
+		final List<T> removed = new ArrayList<>();
+		while (maxRows > 0 && rows.size() + added.size() > maxRows) {
+			removed.add(rows.pollFirst());
+		}
+		rows.addAll(added);
+
+		final Control control = viewer.getControl();
+		control.setRedraw(false);
+		try {
+			if (!removed.isEmpty()) {
+				viewer.remove(removed.toArray());
+				for (final ViewerFilter filter : viewer.getFilters()) {
+					if (filter instanceof IncrementalFilter<?>) {
+						for (final T removedRow : removed) {
+							((IncrementalFilter<?>) filter).remove(removedRow);
+						}
+					} else if (filter instanceof QuickFilter<?>) {
+						for (final T removedRow : removed) {
+							((QuickFilter<?>) filter).remove(removedRow);
+						}
+					}
+				}
+			}
+			viewer.add(added.toArray());
+			if (autoScroll) {
+				viewer.reveal(added.get(added.size() - 1));
+			}
+		} finally {
+			control.setRedraw(true);
+		}
+	}
+
+	@Override
+	public Object[] getElements(final Object inputElement) {
+		return rows.toArray();
+	}
+
+	@Override
+	public void inputChanged(final Viewer viewer, final Object oldInput, final Object newInput) {
+		if (newInput == this) {
+			this.viewer = (TableViewer) viewer;
+			this.display = viewer.getControl().getDisplay();
+			if (!queue.isEmpty()) {
+				scheduleFlush();
+			}
+		} else {
+			this.viewer = null;
+		}
+	}
+
+	@Override
+	public void dispose() {
+		viewer = null;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,141 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A color provider, that shares its colors with all other shared color
+ * providers of the same {@link Display}.
+ * <p>
+ * Each color is created only once per display and reference counted by the
+ * owner controls using it. When the last owner using a color is disposed, the
+ * color is disposed, too.
+ * <p>
+ * Use {@link #forControl(Control)} to get the provider of an owner control.
+ * This is the default color provider of {@link TableViewerBuilder},
+ * {@link TreeViewerBuilder} and {@link ViewerColumnBuilder}.
+ */
+public class SharedColorProvider implements Function<RGB, Color> {
+
+	private static final String DATA_KEY = SharedColorProvider.class.getName();
+
+	private static final Map<Display, Map<RGB, SharedColor>> registries = new HashMap<>();
+
+	private final Logger log = LoggerFactory.getLogger(SharedColorProvider.class);
+
+	/**
+	 * The colors used by the owner.
+	 */
+	private final Map<RGB, Color> ownerColors = new LinkedHashMap<>();
+
+	private final Map<RGB, SharedColor> registry;
+
+	private final Control owner;
+
+	/**
+	 * @return The shared color provider of the given owner control. Repeated
+	 *         calls return the same instance.
+	 */
+	public static SharedColorProvider forControl(final Control owner) {
+		final Object provider = owner.getData(DATA_KEY);
+		if (provider instanceof SharedColorProvider) {
+			return (SharedColorProvider) provider;
+		}
+		final SharedColorProvider newProvider = new SharedColorProvider(owner);
+		owner.setData(DATA_KEY, newProvider);
+		return newProvider;
+	}
+
+	private SharedColorProvider(final Control owner) {
+		this.owner = owner;
+		this.registry = registry(owner.getDisplay());
+		owner.addDisposeListener(new DisposeListener() {
+			@Override
+			public void widgetDisposed(final DisposeEvent arg0) {
+				log.debug("Releasing {} shared colors", ownerColors.size());
+				for (final RGB rgb : ownerColors.keySet()) {
+					release(rgb);
+				}
+				ownerColors.clear();
+			}
+		});
+	}
+
+	private static Map<RGB, SharedColor> registry(final Display display) {
+		synchronized (registries) {
+			Map<RGB, SharedColor> registry = registries.get(display);
+			if (registry == null) {
+				final Map<RGB, SharedColor> newRegistry = new HashMap<>();
+				registries.put(display, newRegistry);
+				display.disposeExec(() -> {
+					synchronized (registries) {
+						registries.remove(display);
+					}
+					for (final SharedColor sharedColor : newRegistry.values()) {
+						sharedColor.color.dispose();
+					}
+					newRegistry.clear();
+				});
+				registry = newRegistry;
+			}
+			return registry;
+		}
+	}
+
+	@Override
+	public Color apply(final RGB rgb) {
+		if (rgb == null) {
+			return null;
+		} else {
+			final Color cached = ownerColors.get(rgb);
+			if (cached == null) {
+				final Color color = acquire(rgb);
+				ownerColors.put(rgb, color);
+				return color;
+			} else {
+				return cached;
+			}
+		}
+	}
+
+	private Color acquire(final RGB rgb) {
+		SharedColor sharedColor = registry.get(rgb);
+		if (sharedColor == null) {
+			log.debug("Creating shared color {}", rgb);
+			sharedColor = new SharedColor(new Color(owner.getDisplay(), rgb));
+			registry.put(rgb, sharedColor);
+		}
+		sharedColor.refCount++;
+		return sharedColor.color;
+	}
+
+	private void release(final RGB rgb) {
+		final SharedColor sharedColor = registry.get(rgb);
+		if (sharedColor != null && --sharedColor.refCount <= 0) {
+			log.debug("Disposing shared color {}", rgb);
+			registry.remove(rgb);
+			sharedColor.color.dispose();
+		}
+	}
+
+	private static final class SharedColor {
+		private final Color color;
+		private int refCount;
+
+		SharedColor(final Color color) {
+			this.color = color;
+		}
+	}
+
+}
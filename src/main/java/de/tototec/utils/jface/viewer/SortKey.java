@@ -0,0 +1,141 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import org.eclipse.core.internal.commands.util.Util;
+
+/**
+ * Typed sort key of a column, used by {@link ColumnSorter} instead of the
+ * text of the column label provider.
+ * <p>
+ * Keys are extracted once per element and sort pass. Numeric keys are held in
+ * primitive arrays, so no boxing or string formatting happens while
+ * comparing.
+ * <p>
+ * Use {@link ViewerColumnBuilder#setSortKey(Function)},
+ * {@link ViewerColumnBuilder#setLongSortKey(ToLongFunction)} or
+ * {@link ViewerColumnBuilder#setDoubleSortKey(ToDoubleFunction)} to declare a
+ * sort key for a column.
+ *
+ * @param <T>
+ *            The element type.
+ */
+public abstract class SortKey<T> {
+
+	SortKey() {
+	}
+
+	/**
+	 * Sort key based on a {@link Comparable}. <code>null</code> keys are
+	 * sorted before all other keys.
+	 */
+	public static <T> SortKey<T> of(final Function<T, ? extends Comparable<?>> extractor) {
+		return new SortKey<T>() {
+			@Override
+			int compare(final Object e1, final Object e2) {
+				return Util.compare(extractor.apply(cast(e1)), extractor.apply(cast(e2)));
+			}
+
+			@Override
+			SortKeys extract(final Object[] elements) {
+				final Comparable<?>[] keys = new Comparable<?>[elements.length];
+				for (int i = 0; i < elements.length; i++) {
+					keys[i] = extractor.apply(cast(elements[i]));
+				}
+				return new SortKeys() {
+					@Override
+					int compare(final int i, final int j) {
+						return Util.compare(keys[i], keys[j]);
+					}
+
+					@Override
+					int size() {
+						return keys.length;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Sort key based on a primitive <code>long</code>.
+	 */
+	public static <T> SortKey<T> ofLong(final ToLongFunction<T> extractor) {
+		return new SortKey<T>() {
+			@Override
+			int compare(final Object e1, final Object e2) {
+				return Long.compare(extractor.applyAsLong(cast(e1)), extractor.applyAsLong(cast(e2)));
+			}
+
+			@Override
+			SortKeys extract(final Object[] elements) {
+				final long[] keys = new long[elements.length];
+				for (int i = 0; i < elements.length; i++) {
+					keys[i] = extractor.applyAsLong(cast(elements[i]));
+				}
+				return new SortKeys() {
+					@Override
+					int compare(final int i, final int j) {
+						return Long.compare(keys[i], keys[j]);
+					}
+
+					@Override
+					int size() {
+						return keys.length;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Sort key based on a primitive <code>double</code>. Values are ordered
+	 * as by {@link Double#compare(double, double)}.
+	 */
+	public static <T> SortKey<T> ofDouble(final ToDoubleFunction<T> extractor) {
+		return new SortKey<T>() {
+			@Override
+			int compare(final Object e1, final Object e2) {
+				return Double.compare(extractor.applyAsDouble(cast(e1)), extractor.applyAsDouble(cast(e2)));
+			}
+
+			@Override
+			SortKeys extract(final Object[] elements) {
+				final double[] keys = new double[elements.length];
+				for (int i = 0; i < elements.length; i++) {
+					keys[i] = extractor.applyAsDouble(cast(elements[i]));
+				}
+				return new SortKeys() {
+					@Override
+					int compare(final int i, final int j) {
+						return Double.compare(keys[i], keys[j]);
+					}
+
+					@Override
+					int size() {
+						return keys.length;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Compare two single elements, e.g. when an element is inserted into an
+	 * already sorted viewer.
+	 */
+	abstract int compare(Object e1, Object e2);
+
+	/**
+	 * Extract the keys of all given elements.
+	 */
+	abstract SortKeys extract(Object[] elements);
+
+	@SuppressWarnings("unchecked")
+	T cast(final Object element) {
+		return (T) element;
+	}
+
+}
@@ -0,0 +1,263 @@
+package de.tototec.utils.jface.viewer;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.function.Function;
+
+import org.eclipse.core.internal.commands.util.Util;
+
+/**
+ * Sort keys of all elements of a single sort pass, extracted once and
+ * addressed by the index of the element in the unsorted array.
+ * <p>
+ * Instances are only valid for the duration of one sort pass and are not
+ * intended to be kept.
+ */
+abstract class SortKeys {
+
+	/**
+	 * Below this size, ranges are sorted with insertion sort.
+	 */
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	/**
+	 * Compare the keys of the elements at index <code>i</code> and
+	 * <code>j</code>.
+	 */
+	abstract int compare(int i, int j);
+
+	/**
+	 * @return The number of elements this keys were extracted from.
+	 */
+	abstract int size();
+
+	/**
+	 * @return <code>true</code> if comparing calls a comparator on the
+	 *         elements themselves instead of comparing extracted keys. Such
+	 *         comparators are not required to be thread-safe, so these keys
+	 *         must not be sorted in parallel.
+	 */
+	boolean comparesElements() {
+		return false;
+	}
+
+	/**
+	 * Stable sort of all element indices according to their keys.
+	 *
+	 * @param direction
+	 *            {@link ColumnSorter#ASC} or {@link ColumnSorter#DESC}
+	 * @return The indices of the elements in sorted order.
+	 */
+	int[] sortedIndices(final int direction) {
+		final int size = size();
+		final int[] indices = new int[size];
+		for (int i = 0; i < size; i++) {
+			indices[i] = i;
+		}
+		final int[] aux = indices.clone();
+		mergeSort(aux, indices, 0, size, direction);
+		return indices;
+	}
+
+	/**
+	 * Like {@link #sortedIndices(int)}, but sorts with
+	 * {@link Arrays#parallelSort(Object[], java.util.Comparator)} in the
+	 * common fork-join pool. Ties are ordered by index, so the result is
+	 * exactly the one of the sequential sort. Must not be used for keys, which
+	 * {@link #comparesElements() compare elements}.
+	 */
+	int[] parallelSortedIndices(final int direction) {
+		final int size = size();
+		final Integer[] boxed = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			boxed[i] = i;
+		}
+		Arrays.parallelSort(boxed, (i, j) -> {
+			final int result = direction * compare(i, j);
+			return result != 0 ? result : Integer.compare(i, j);
+		});
+		final int[] indices = new int[size];
+		for (int i = 0; i < size; i++) {
+			indices[i] = boxed[i];
+		}
+		return indices;
+	}
+
+	/**
+	 * Sorts <code>dest[from, to)</code>, using <code>src</code> as
+	 * scratch space, which must contain the same values in that range.
+	 */
+	private void mergeSort(final int[] src, final int[] dest, final int from, final int to, final int direction) {
+		final int length = to - from;
+		if (length < INSERTION_SORT_THRESHOLD) {
+			for (int i = from + 1; i < to; i++) {
+				final int current = dest[i];
+				int j = i - 1;
+				while (j >= from && direction * compare(dest[j], current) > 0) {
+					dest[j + 1] = dest[j];
+					j--;
+				}
+				dest[j + 1] = current;
+			}
+			return;
+		}
+
+		final int mid = (from + to) >>> 1;
+		mergeSort(dest, src, from, mid, direction);
+		mergeSort(dest, src, mid, to, direction);
+
+		// already in order
+		if (direction * compare(src[mid - 1], src[mid]) <= 0) {
+			System.arraycopy(src, from, dest, from, length);
+			return;
+		}
+
+		for (int i = from, p = from, q = mid; i < to; i++) {
+			if (q >= to || p < mid && direction * compare(src[p], src[q]) <= 0) {
+				dest[i] = src[p++];
+			} else {
+				dest[i] = src[q++];
+			}
+		}
+	}
+
+	/**
+	 * Find the runs of elements with equal keys in the given sorted indices.
+	 *
+	 * @return The positions in <code>sortedIndices</code>, at which a new run
+	 *         starts.
+	 */
+	BitSet runStarts(final int[] sortedIndices) {
+		final BitSet runStarts = new BitSet(sortedIndices.length);
+		for (int i = 0; i < sortedIndices.length; i++) {
+			if (i == 0 || compare(sortedIndices[i - 1], sortedIndices[i]) != 0) {
+				runStarts.set(i);
+			}
+		}
+		return runStarts;
+	}
+
+	/**
+	 * Reorder the given elements according to the given sorted indices.
+	 */
+	static void permute(final Object[] elements, final int[] sortedIndices) {
+		final Object[] unsorted = elements.clone();
+		for (int i = 0; i < sortedIndices.length; i++) {
+			elements[i] = unsorted[sortedIndices[i]];
+		}
+	}
+
+	/**
+	 * Text keys, compared the same way as
+	 * {@link Util#compare(Comparable, Comparable)} does.
+	 */
+	static SortKeys text(final Object[] elements, final Function<Object, String> text) {
+		final String[] keys = new String[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			keys[i] = text.apply(elements[i]);
+		}
+		return new SortKeys() {
+			@Override
+			int compare(final int i, final int j) {
+				return Util.compare(keys[i], keys[j]);
+			}
+
+			@Override
+			int size() {
+				return keys.length;
+			}
+		};
+	}
+
+	/**
+	 * Text keys, compared according to the given {@link Collator}. Each text
+	 * is converted into a {@link CollationKey} only once.
+	 */
+	static SortKeys collated(final Object[] elements, final Function<Object, String> text, final Collator collator) {
+		final CollationKey[] keys = new CollationKey[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			final String string = text.apply(elements[i]);
+			keys[i] = string == null ? null : collator.getCollationKey(string);
+		}
+		return new SortKeys() {
+			@Override
+			int compare(final int i, final int j) {
+				return Util.compare(keys[i], keys[j]);
+			}
+
+			@Override
+			int size() {
+				return keys.length;
+			}
+		};
+	}
+
+	/**
+	 * Keys compared by the given comparator on the elements themselves, e.g.
+	 * for columns with a custom sorter. The elements must not be reordered
+	 * before sorting is finished.
+	 */
+	static SortKeys comparator(final Object[] elements, final Comparator<Object> comparator) {
+		return new SortKeys() {
+			@Override
+			int compare(final int i, final int j) {
+				return comparator.compare(elements[i], elements[j]);
+			}
+
+			@Override
+			boolean comparesElements() {
+				return true;
+			}
+
+			@Override
+			int size() {
+				return elements.length;
+			}
+		};
+	}
+
+	/**
+	 * Composite keys of multiple columns, compared lexicographically. The keys
+	 * of each column are held in their own compact (primitive, if possible)
+	 * array, and the keys of the next column are only consulted if all
+	 * previous ones are equal.
+	 *
+	 * @param directions
+	 *            The direction of each key, {@link ColumnSorter#ASC} or
+	 *            {@link ColumnSorter#DESC}.
+	 */
+	static SortKeys composite(final SortKeys[] keys, final int[] directions) {
+		final int size = keys[0].size();
+		return new SortKeys() {
+			@Override
+			int compare(final int i, final int j) {
+				for (int k = 0; k < keys.length; k++) {
+					final int result = keys[k].compare(i, j);
+					if (result != 0) {
+						return directions[k] * result;
+					}
+				}
+				return 0;
+			}
+
+			@Override
+			int size() {
+				return size;
+			}
+
+			@Override
+			boolean comparesElements() {
+				for (final SortKeys key : keys) {
+					if (key.comparesElements()) {
+						return true;
+					}
+				}
+				return false;
+			}
+		};
+	}
+
+}
@@ -5,17 +5,21 @@ import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
+import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.viewers.ColumnViewerEditor;
 import org.eclipse.jface.viewers.ColumnViewerEditorActivationEvent;
 import org.eclipse.jface.viewers.ColumnViewerEditorActivationStrategy;
-import org.eclipse.jface.viewers.ColumnViewerToolTipSupport;
 import org.eclipse.jface.viewers.FocusCellOwnerDrawHighlighter;
 import org.eclipse.jface.viewers.TableLayout;
 import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.jface.viewers.TableViewerEditor;
 import org.eclipse.jface.viewers.TableViewerFocusCellManager;
 import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontData;
+import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.widgets.TableColumn;
 
@@ -33,6 +37,11 @@ public class TableViewerBuilder<T> {
 	private Boolean moveable;
 	private boolean withTableLayout;
 	private Function<RGB, Color> colorProvider;
+	private Function<FontData, Font> fontProvider;
+	private Function<ImageDescriptor, Image> imageProvider;
+	private RowSource<T> virtualRows;
+	private RowStream<T> rowStream;
+	private DeltaContentProvider<T, ?> deltaContentProvider;
 
 	public TableViewerBuilder() {
 	}
@@ -42,6 +51,42 @@ public class TableViewerBuilder<T> {
 		return this;
 	}
 
+	/**
+	 * Show the rows of the given row source lazily with a
+	 * {@link VirtualContentProvider}, so that only the visible rows are
+	 * materialized and labeled. The table must be created with
+	 * {@link SWT#VIRTUAL}. The row source becomes the input of the viewer.
+	 * <p>
+	 * For rows, which are expensive to fetch one at a time, use a
+	 * {@link PagedRowSource}. It can only be combined with filters, if it has
+	 * a query handler, see
+	 * {@link PagedRowSource#setQueryHandler(java.util.function.Consumer)}.
+	 */
+	public TableViewerBuilder<T> withVirtual(final RowSource<T> rows) {
+		this.virtualRows = rows;
+		return this;
+	}
+
+	/**
+	 * Show the rows pushed into the given stream, added in batches at most
+	 * once per flush interval. The row stream becomes the content provider
+	 * and input of the viewer.
+	 */
+	public TableViewerBuilder<T> withStreaming(final RowStream<T> rowStream) {
+		this.rowStream = rowStream;
+		return this;
+	}
+
+	/**
+	 * Use the given content provider, which applies changed rows to the
+	 * viewer incrementally instead of refreshing it. The content provider
+	 * becomes the input of the viewer.
+	 */
+	public TableViewerBuilder<T> withDeltaUpdates(final DeltaContentProvider<T, ?> deltaContentProvider) {
+		this.deltaContentProvider = deltaContentProvider;
+		return this;
+	}
+
 	public TableViewerBuilder<T> setColumnsResizable(final boolean resizable) {
 		this.resizable = resizable;
 		return this;
@@ -96,6 +141,11 @@ public class TableViewerBuilder<T> {
 		return this;
 	}
 
+	/**
+	 * Add a filter. For large inputs, consider an {@link IncrementalFilter},
+	 * which remembers its results per element and can filter in the
+	 * background.
+	 */
 	public TableViewerBuilder<T> addFilter(final ViewerFilter viewerFilter) {
 		if (viewerFilters == null) {
 			viewerFilters = new LinkedList<ViewerFilter>();
@@ -104,6 +154,16 @@ public class TableViewerBuilder<T> {
 		return this;
 	}
 
+	/**
+	 * Add a {@link QuickFilter}, which selects the rows containing its query
+	 * text in any column.
+	 */
+	public QuickFilter<T> addQuickFilter() {
+		final QuickFilter<T> quickFilter = new QuickFilter<>();
+		addFilter(quickFilter);
+		return quickFilter;
+	}
+
 	public TableViewerBuilder<T> addColumn(final ViewerColumnBuilder<T> tableViewerColumnBuilder) {
 		if (columnBuilders == null) {
 			columnBuilders = new LinkedList<ViewerColumnBuilder<T>>();
@@ -123,9 +183,48 @@ public class TableViewerBuilder<T> {
 		return this;
 	}
 
+	public TableViewerBuilder<T> setFontProvider(final Function<FontData, Font> fontProvider) {
+		this.fontProvider = fontProvider;
+		return this;
+	}
+
+	public TableViewerBuilder<T> setImageProvider(final Function<ImageDescriptor, Image> imageProvider) {
+		this.imageProvider = imageProvider;
+		return this;
+	}
+
 	public TableViewer apply(final TableViewer tableViewer) {
+		if ((virtualRows != null ? 1 : 0) + (rowStream != null ? 1 : 0) + (deltaContentProvider != null ? 1 : 0) > 1) {
+			throw new IllegalStateException("Virtual, streaming and delta update mode can not be combined");
+		}
+		if (virtualRows != null) {
+			if ((tableViewer.getTable().getStyle() & SWT.VIRTUAL) == 0) {
+				throw new IllegalArgumentException("A virtual table requires the SWT.VIRTUAL style");
+			}
+			if (virtualRows instanceof PagedRowSource<?> && viewerFilters != null
+					&& !((PagedRowSource<?>) virtualRows).hasQueryHandler()) {
+				throw new IllegalStateException("A PagedRowSource can not be filtered by the viewer. "
+						+ "Filter in its page loader with a query handler instead.");
+			}
+			tableViewer.setUseHashlookup(true);
+			tableViewer.setContentProvider(new VirtualContentProvider<T>());
+		} else if (rowStream != null) {
+			// the oldest rows and the revealed row are looked up on each flush
+			tableViewer.setUseHashlookup(true);
+			tableViewer.setContentProvider(rowStream);
+		} else if (deltaContentProvider != null) {
+			tableViewer.setUseHashlookup(true);
+			tableViewer.setContentProvider(deltaContentProvider);
+		}
+
 		if (colorProvider == null) {
-			colorProvider = new ColorProvider(tableViewer.getControl());
+			colorProvider = SharedColorProvider.forControl(tableViewer.getControl());
+		}
+		if (fontProvider == null) {
+			fontProvider = new FontProvider(tableViewer.getControl());
+		}
+		if (imageProvider == null) {
+			imageProvider = new ImageProvider(tableViewer.getControl());
 		}
 
 		if (withTableLayout) {
@@ -137,16 +236,23 @@ public class TableViewerBuilder<T> {
 		if (columnBuilders != null) {
 			for (final ViewerColumnBuilder<T> columnBuilder : columnBuilders) {
 				columnBuilder.setColorProvider(colorProvider);
+				columnBuilder.setFontProvider(fontProvider);
+				columnBuilder.setImageProvider(imageProvider);
 				toolTipSupport = toolTipSupport || columnBuilder.needsToolTipSupport();
 				columnBuilder.build(tableViewer);
 			}
 		}
 
 		if (toolTipSupport) {
-			ColumnViewerToolTipSupport.enableFor(tableViewer);
+			AsyncToolTipSupport.forViewer(tableViewer);
 		}
 
 		if (viewerFilters != null) {
+			for (final ViewerFilter viewerFilter : viewerFilters) {
+				if (viewerFilter instanceof QuickFilter<?>) {
+					((QuickFilter<?>) viewerFilter).attach(tableViewer);
+				}
+			}
 			tableViewer.setFilters(viewerFilters.toArray(new ViewerFilter[viewerFilters.size()]));
 		}
 
@@ -187,6 +293,14 @@ public class TableViewerBuilder<T> {
 			}
 		}
 
+		if (virtualRows != null) {
+			tableViewer.setInput(virtualRows);
+		} else if (rowStream != null) {
+			tableViewer.setInput(rowStream);
+		} else if (deltaContentProvider != null) {
+			tableViewer.setInput(deltaContentProvider);
+		}
+
 		return tableViewer;
 	}
 }
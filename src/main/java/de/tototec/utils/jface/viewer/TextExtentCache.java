@@ -0,0 +1,90 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * Caches the widths of texts drawn with a font on a control, so that
+ * measuring the same text again needs no {@link GC}.
+ * <p>
+ * A {@link GC} is only created on a cache miss and must be released with
+ * {@link #release()} after measuring.
+ */
+class TextExtentCache {
+
+	private static final String DATA_KEY = TextExtentCache.class.getName();
+
+	/**
+	 * The maximal number of cached widths per font.
+	 */
+	private static final int MAX_SIZE = 10000;
+
+	private final Control control;
+
+	private final Map<Font, Map<String, Integer>> widths = new WeakHashMap<>();
+
+	private GC gc;
+
+	/**
+	 * @return The text extent cache of the given control. Repeated calls
+	 *         return the same instance.
+	 */
+	static TextExtentCache forControl(final Control control) {
+		final Object cache = control.getData(DATA_KEY);
+		if (cache instanceof TextExtentCache) {
+			return (TextExtentCache) cache;
+		}
+		final TextExtentCache newCache = new TextExtentCache(control);
+		control.setData(DATA_KEY, newCache);
+		return newCache;
+	}
+
+	private TextExtentCache(final Control control) {
+		this.control = control;
+	}
+
+	/**
+	 * @return The width of the given text in pixels.
+	 */
+	int width(final Font font, final String text) {
+		Map<String, Integer> fontWidths = widths.get(font);
+		if (fontWidths == null) {
+			fontWidths = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<String, Integer> eldest) {
+					return size() > MAX_SIZE;
+				}
+			};
+			widths.put(font, fontWidths);
+		}
+		final Integer cached = fontWidths.get(text);
+		if (cached != null) {
+			return cached;
+		}
+		if (gc == null) {
+			gc = new GC(control);
+		}
+		gc.setFont(font);
+		final int width = gc.textExtent(text).x;
+		fontWidths.put(text, width);
+		return width;
+	}
+
+	/**
+	 * Dispose the {@link GC} created for measuring, if any.
+	 */
+	void release() {
+		if (gc != null) {
+			gc.dispose();
+			gc = null;
+		}
+	}
+
+}
\ No newline at end of file
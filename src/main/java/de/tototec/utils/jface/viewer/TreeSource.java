@@ -0,0 +1,38 @@
+package de.tototec.utils.jface.viewer;
+
+/**
+ * A random-access source of the nodes of a virtual tree, see
+ * {@link VirtualTreeContentProvider}.
+ * <p>
+ * Children are only requested when their parent is expanded and they become
+ * visible, or when all children of an expanded parent need to be filtered or
+ * sorted. Nodes must implement {@link Object#equals(Object)} and
+ * {@link Object#hashCode()} consistently, as the viewer looks them up by
+ * hash.
+ */
+public interface TreeSource<T> {
+
+	/**
+	 * @param parent
+	 *            The parent node or <code>null</code> for the top level.
+	 * @return The number of children of the given node.
+	 */
+	public int childCount(T parent);
+
+	/**
+	 * @param parent
+	 *            The parent node or <code>null</code> for the top level.
+	 * @return The child of the given node at the given index.
+	 */
+	public T child(T parent, int index);
+
+	/**
+	 * @return The parent of the given node or <code>null</code> if it is on the
+	 *         top level or unknown. Only needed to reveal or select nodes,
+	 *         which were not yet shown.
+	 */
+	public default T parent(final T node) {
+		return null;
+	}
+
+}
@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
+import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.viewers.ColumnViewerEditor;
 import org.eclipse.jface.viewers.ColumnViewerEditorActivationEvent;
 import org.eclipse.jface.viewers.ColumnViewerEditorActivationStrategy;
@@ -14,7 +15,11 @@ import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.TreeViewerEditor;
 import org.eclipse.jface.viewers.TreeViewerFocusCellManager;
 import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontData;
+import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.widgets.TreeColumn;
 
@@ -32,6 +37,9 @@ public class TreeViewerBuilder<T> {
 	private Boolean moveable;
 	private boolean withTableLayout;
 	private Function<RGB, Color> colorProvider;
+	private Function<FontData, Font> fontProvider;
+	private Function<ImageDescriptor, Image> imageProvider;
+	private TreeSource<T> virtualNodes;
 
 	public TreeViewerBuilder() {
 	}
@@ -41,6 +49,18 @@ public class TreeViewerBuilder<T> {
 		return this;
 	}
 
+	/**
+	 * Show the nodes of the given tree source lazily with a
+	 * {@link VirtualTreeContentProvider}, so that only the visible children of
+	 * expanded nodes are materialized and labeled. The tree must be created
+	 * with {@link SWT#VIRTUAL}. The tree source becomes the input of the
+	 * viewer.
+	 */
+	public TreeViewerBuilder<T> withVirtual(final TreeSource<T> nodes) {
+		this.virtualNodes = nodes;
+		return this;
+	}
+
 	public TreeViewerBuilder<T> setColumnsResizable(final boolean resizable) {
 		this.resizable = resizable;
 		return this;
@@ -99,6 +119,16 @@ public class TreeViewerBuilder<T> {
 		return this;
 	}
 
+	/**
+	 * Add a {@link QuickFilter}, which selects the rows containing its query
+	 * text in any column.
+	 */
+	public QuickFilter<T> addQuickFilter() {
+		final QuickFilter<T> quickFilter = new QuickFilter<>();
+		addFilter(quickFilter);
+		return quickFilter;
+	}
+
 	public TreeViewerBuilder<T> addColumn(final ViewerColumnBuilder<T> treeViewerColumnBuilder) {
 		if (columnBuilders == null) {
 			columnBuilders = new LinkedList<ViewerColumnBuilder<T>>();
@@ -118,9 +148,33 @@ public class TreeViewerBuilder<T> {
 		return this;
 	}
 
+	public TreeViewerBuilder<T> setFontProvider(final Function<FontData, Font> fontProvider) {
+		this.fontProvider = fontProvider;
+		return this;
+	}
+
+	public TreeViewerBuilder<T> setImageProvider(final Function<ImageDescriptor, Image> imageProvider) {
+		this.imageProvider = imageProvider;
+		return this;
+	}
+
 	public TreeViewer apply(final TreeViewer treeViewer) {
 		if (colorProvider == null) {
-			colorProvider = new ColorProvider(treeViewer.getControl());
+			colorProvider = SharedColorProvider.forControl(treeViewer.getControl());
+		}
+		if (fontProvider == null) {
+			fontProvider = new FontProvider(treeViewer.getControl());
+		}
+		if (imageProvider == null) {
+			imageProvider = new ImageProvider(treeViewer.getControl());
+		}
+
+		if (virtualNodes != null) {
+			if ((treeViewer.getTree().getStyle() & SWT.VIRTUAL) == 0) {
+				throw new IllegalArgumentException("A virtual tree requires the SWT.VIRTUAL style");
+			}
+			treeViewer.setUseHashlookup(true);
+			treeViewer.setContentProvider(new VirtualTreeContentProvider<T>());
 		}
 
 		if (withTableLayout) {
@@ -130,11 +184,18 @@ public class TreeViewerBuilder<T> {
 		if (columnBuilders != null) {
 			for (final ViewerColumnBuilder<T> columnBuilder : columnBuilders) {
 				columnBuilder.setColorProvider(colorProvider);
+				columnBuilder.setFontProvider(fontProvider);
+				columnBuilder.setImageProvider(imageProvider);
 				columnBuilder.build(treeViewer);
 			}
 		}
 
 		if (viewerFilters != null) {
+			for (final ViewerFilter viewerFilter : viewerFilters) {
+				if (viewerFilter instanceof QuickFilter<?>) {
+					((QuickFilter<?>) viewerFilter).attach(treeViewer);
+				}
+			}
 			treeViewer.setFilters(viewerFilters.toArray(new ViewerFilter[viewerFilters.size()]));
 		}
 
@@ -175,6 +236,10 @@ public class TreeViewerBuilder<T> {
 			}
 		}
 
+		if (virtualNodes != null) {
+			treeViewer.setInput(virtualNodes);
+		}
+
 		return treeViewer;
 	}
 }
@@ -1,14 +1,20 @@
 package de.tototec.utils.jface.viewer;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 
 import org.eclipse.jface.layout.TableColumnLayout;
 import org.eclipse.jface.layout.TreeColumnLayout;
+import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.viewers.CellLabelProvider;
 import org.eclipse.jface.viewers.ColumnLabelProvider;
 import org.eclipse.jface.viewers.ColumnLayoutData;
@@ -22,7 +28,11 @@ import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.TreeViewerColumn;
 import org.eclipse.jface.viewers.ViewerColumn;
 import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontData;
+import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Item;
 import org.eclipse.swt.widgets.Layout;
 import org.eclipse.swt.widgets.TableColumn;
@@ -42,6 +52,7 @@ public class ViewerColumnBuilder<T> {
 	private String headerTooltip;
 	private Map<String, Object> dataMap = new LinkedHashMap<>();
 	private Integer width;
+	private int autoSizeSampleSize;
 	private ColumnLabelProvider columnLabelProvider;
 	private Function<T, String> labelFunction;
 	private EditingSupportBuilder<T, ?> editingSupportBuilder;
@@ -51,8 +62,24 @@ public class ViewerColumnBuilder<T> {
 	private Integer layoutWidth;
 	private BiFunction<T, RGB, RGB> backgroudColorDecorator;
 	private BiFunction<T, RGB, RGB> foregroudColorDecorator;
+	private IntColorDecorator<T> intBackgroundColorDecorator;
+	private IntColorDecorator<T> intForegroundColorDecorator;
 	private Function<RGB, Color> colorProvider;
+	private BiFunction<T, FontData, FontData> fontDecorator;
+	private Function<FontData, Font> fontProvider;
+	private BiFunction<T, Image, ImageDescriptor> imageDecorator;
+	private Function<ImageDescriptor, Image> imageProvider;
+	private Function<T, Set<String>> overlayDecorator;
+	private Map<String, Entry<ImageDescriptor, Integer>> overlays = new LinkedHashMap<>();
+	private OverlayImageProvider overlayImageProvider;
+	private Procedure2<T, CellAttributes> cellUpdater;
+	private boolean cellCache;
 	private BiFunction<T, String, String> toolTipDecorator;
+	private ExecutorService toolTipExecutor;
+	private String toolTipPlaceholder;
+	private long toolTipExpiryMillis;
+	private SortKey<T> sortKey;
+	private ErrorReporter errorReporter;
 
 	public ViewerColumnBuilder<T> setStyle(final int style) {
 		this.style = style;
@@ -79,6 +106,21 @@ public class ViewerColumnBuilder<T> {
 		return this;
 	}
 
+	/**
+	 * Fit the width of the column to its content, measuring at most the given
+	 * number of rows. The column is only widened, also when rows are added
+	 * later. See {@link ColumnAutoSizer}.
+	 *
+	 * @param sampleSize
+	 *            The number of rows to measure, e.g.
+	 *            {@link ColumnAutoSizer#DEFAULT_SAMPLE_SIZE}, or
+	 *            <code>0</code> to disable auto-sizing.
+	 */
+	public ViewerColumnBuilder<T> setAutoSize(final int sampleSize) {
+		this.autoSizeSampleSize = sampleSize;
+		return this;
+	}
+
 	public ViewerColumnBuilder<T> setLayoutWeight(final int weight, final int minWidth) {
 		this.layoutWeight = weight;
 		this.layoutWidth = minWidth;
@@ -115,6 +157,50 @@ public class ViewerColumnBuilder<T> {
 		return this;
 	}
 
+	/**
+	 * Apply the tooltip decorator asynchronously, for decorators too slow to
+	 * run in the display thread.
+	 * <p>
+	 * The placeholder is shown at once, while the decorated tooltip text is
+	 * computed with the given executor. Decorated tooltip texts are cached per
+	 * element for the given time. The computation is cancelled, when the
+	 * pointer leaves the cell. See {@link AsyncToolTipSupport}.
+	 */
+	public ViewerColumnBuilder<T> setAsyncToolTip(final ExecutorService executor, final String placeholder,
+			final long expiryMillis) {
+		this.toolTipExecutor = executor;
+		this.toolTipPlaceholder = placeholder;
+		this.toolTipExpiryMillis = expiryMillis;
+		return this;
+	}
+
+	/**
+	 * Sort this column by the given key instead of the label text, when used
+	 * with a {@link ColumnSorter}.
+	 */
+	public ViewerColumnBuilder<T> setSortKey(final Function<T, ? extends Comparable<?>> sortKey) {
+		this.sortKey = SortKey.of(sortKey);
+		return this;
+	}
+
+	/**
+	 * Sort this column by the given primitive <code>long</code> key instead of
+	 * the label text, when used with a {@link ColumnSorter}.
+	 */
+	public ViewerColumnBuilder<T> setLongSortKey(final ToLongFunction<T> sortKey) {
+		this.sortKey = SortKey.ofLong(sortKey);
+		return this;
+	}
+
+	/**
+	 * Sort this column by the given primitive <code>double</code> key instead
+	 * of the label text, when used with a {@link ColumnSorter}.
+	 */
+	public ViewerColumnBuilder<T> setDoubleSortKey(final ToDoubleFunction<T> sortKey) {
+		this.sortKey = SortKey.ofDouble(sortKey);
+		return this;
+	}
+
 	public ViewerColumnBuilder<T> setEditingSupportBuilder(final EditingSupportBuilder<T, ?> editingSupportBuilder) {
 		this.editingSupportBuilder = editingSupportBuilder;
 		return this;
@@ -132,7 +218,104 @@ public class ViewerColumnBuilder<T> {
 		return this;
 	}
 
+	/**
+	 * Like {@link #setForegroundColorDecorator(BiFunction)}, but works on
+	 * packed <code>int</code> RGB values, so that painting does not allocate.
+	 * Takes precedence over an {@link RGB} based decorator.
+	 */
+	public ViewerColumnBuilder<T> setIntForegroundColorDecorator(
+			final IntColorDecorator<T> foregroudColorDecorator) {
+		this.intForegroundColorDecorator = foregroudColorDecorator;
+		return this;
+	}
+
+	/**
+	 * Like {@link #setBackgroundColorDecorator(BiFunction)}, but works on
+	 * packed <code>int</code> RGB values, so that painting does not allocate.
+	 * Takes precedence over an {@link RGB} based decorator.
+	 */
+	public ViewerColumnBuilder<T> setIntBackgroundColorDecorator(
+			final IntColorDecorator<T> backgroudColorDecorator) {
+		this.intBackgroundColorDecorator = backgroudColorDecorator;
+		return this;
+	}
+
+	/**
+	 * Decorate the font of the cells. The decorator gets the element and the
+	 * font data of the base font (or <code>null</code>), and returns the font
+	 * data of the font to use (or <code>null</code> for the default font). The
+	 * fonts are created and cached by the font provider.
+	 */
+	public ViewerColumnBuilder<T> setFontDecorator(final BiFunction<T, FontData, FontData> fontDecorator) {
+		this.fontDecorator = fontDecorator;
+		return this;
+	}
+
+	/**
+	 * Decorate the image of the cells. The decorator gets the element and the
+	 * base image (or <code>null</code>), and returns the descriptor of the
+	 * image to use (or <code>null</code> to keep the base image). The images
+	 * are created and cached by the image provider.
+	 */
+	public ViewerColumnBuilder<T> setImageDecorator(final BiFunction<T, Image, ImageDescriptor> imageDecorator) {
+		this.imageDecorator = imageDecorator;
+		return this;
+	}
+
+	/**
+	 * Show overlay images on top of the (decorated) image of the cells. The
+	 * decorator returns the keys of the overlays to show, which must be
+	 * registered with {@link #addOverlay(String, ImageDescriptor, int)}. Each
+	 * combination of image and overlays is drawn only once and cached.
+	 */
+	public ViewerColumnBuilder<T> setOverlayDecorator(final Function<T, Set<String>> overlayDecorator) {
+		this.overlayDecorator = overlayDecorator;
+		return this;
+	}
+
+	/**
+	 * Register an overlay image for the overlay decorator.
+	 *
+	 * @see OverlayImageProvider#addOverlay(String, ImageDescriptor, int)
+	 */
+	public ViewerColumnBuilder<T> addOverlay(final String key, final ImageDescriptor overlay, final int position) {
+		this.overlays.put(key, new SimpleImmutableEntry<>(overlay, position));
+		return this;
+	}
+
+	/**
+	 * Compute the text, image, font and colors of a cell in a single pass,
+	 * e.g. to share expensive lookups on the element. Attributes not set by
+	 * the cell updater are computed as usual, by the label function and
+	 * decorators of this column.
+	 */
+	public ViewerColumnBuilder<T> setCellUpdater(final Procedure2<T, CellAttributes> cellUpdater) {
+		this.cellUpdater = cellUpdater;
+		return this;
+	}
+
+	/**
+	 * Memoize the computed attributes of the cells of this column in the
+	 * {@link CellCache} of the viewer, so that re-materializing the items of
+	 * a virtual table or tree, e.g. while scrolling, does not compute them
+	 * again. Updating or refreshing elements through the viewer computes them
+	 * anew. Only has an effect on viewers created with <code>SWT.VIRTUAL</code>.
+	 */
+	public ViewerColumnBuilder<T> setCellCache(final boolean cellCache) {
+		this.cellCache = cellCache;
+		return this;
+	}
+
+	/**
+	 * @return The error reporter of the last built column, counting the
+	 *         failures of its label function and decorators.
+	 */
+	public ErrorReporter getErrorReporter() {
+		return errorReporter;
+	}
+
 	protected CellLabelProvider createLabelProvider(final Function<RGB, Color> colorProvider) {
+		final ErrorReporter reporter = errorReporter;
 		final ColumnLabelProvider labelProvider;
 		if (columnLabelProvider != null) {
 			labelProvider = columnLabelProvider;
@@ -145,7 +328,7 @@ public class ViewerColumnBuilder<T> {
 						final T t = (T) element;
 						return labelFunction.apply(t);
 					} catch (final Exception e) {
-						log.error("Could not apply labelFunction on element: {}", element, e);
+						reporter.report("labelFunction", element, e);
 						return "";
 					}
 				}
@@ -161,8 +344,25 @@ public class ViewerColumnBuilder<T> {
 			};
 		}
 
-		return new DecoratedLabelProvider<T>(labelProvider, colorProvider, Optional.ofNullable(backgroudColorDecorator),
+		final DecoratedLabelProvider<T> decoratedLabelProvider = new DecoratedLabelProvider<T>(labelProvider,
+				colorProvider, Optional.ofNullable(backgroudColorDecorator),
 				Optional.ofNullable(foregroudColorDecorator), Optional.ofNullable(toolTipDecorator));
+		decoratedLabelProvider.setBackground(intBackgroundColorDecorator);
+		decoratedLabelProvider.setForeground(intForegroundColorDecorator);
+		if (fontDecorator != null) {
+			decoratedLabelProvider.setFont(fontDecorator, fontProvider);
+		}
+		if (imageDecorator != null) {
+			decoratedLabelProvider.setImage(imageDecorator, imageProvider);
+		}
+		if (overlayDecorator != null) {
+			decoratedLabelProvider.setOverlays(overlayDecorator, overlayImageProvider);
+		}
+		decoratedLabelProvider.setErrorReporter(reporter);
+		if (cellUpdater != null) {
+			decoratedLabelProvider.setCellUpdater(cellUpdater, fontProvider, imageProvider);
+		}
+		return decoratedLabelProvider;
 
 	}
 
@@ -171,6 +371,24 @@ public class ViewerColumnBuilder<T> {
 		return this;
 	}
 
+	public ViewerColumnBuilder<T> setFontProvider(final Function<FontData, Font> fontProvider) {
+		this.fontProvider = fontProvider;
+		return this;
+	}
+
+	public ViewerColumnBuilder<T> setImageProvider(final Function<ImageDescriptor, Image> imageProvider) {
+		this.imageProvider = imageProvider;
+		return this;
+	}
+
+	private OverlayImageProvider createOverlayImageProvider(final Control owner) {
+		final OverlayImageProvider provider = new OverlayImageProvider(owner);
+		for (final Entry<String, Entry<ImageDescriptor, Integer>> overlay : overlays.entrySet()) {
+			provider.addOverlay(overlay.getKey(), overlay.getValue().getKey(), overlay.getValue().getValue());
+		}
+		return provider;
+	}
+
 	protected void buildCommon(final Item column, final Layout layout, final Layout parentLayout) {
 		final boolean hasLayout = layout instanceof TableLayout ||
 				parentLayout instanceof TableColumnLayout ||
@@ -193,6 +411,9 @@ public class ViewerColumnBuilder<T> {
 				column.setData(data.getKey(), data.getValue());
 			}
 		}
+		if (sortKey != null) {
+			column.setData(ColumnSorter.SORT_KEY_DATA, sortKey);
+		}
 		if (width != null && width >= 0) {
 			tableCol.ifPresent(c -> c.setWidth(width.intValue()));
 			treeCol.ifPresent(c -> c.setWidth(width.intValue()));
@@ -247,7 +468,16 @@ public class ViewerColumnBuilder<T> {
 
 	public TableViewerColumn build(final TableViewer tableViewer) {
 		if (colorProvider == null) {
-			colorProvider = new ColorProvider(tableViewer.getControl());
+			colorProvider = SharedColorProvider.forControl(tableViewer.getControl());
+		}
+		if (fontProvider == null && (fontDecorator != null || cellUpdater != null)) {
+			fontProvider = new FontProvider(tableViewer.getControl());
+		}
+		if (imageProvider == null && (imageDecorator != null || cellUpdater != null)) {
+			imageProvider = new ImageProvider(tableViewer.getControl());
+		}
+		if (overlayDecorator != null) {
+			overlayImageProvider = createOverlayImageProvider(tableViewer.getControl());
 		}
 
 		final TableViewerColumn tableViewerColumn = new TableViewerColumn(tableViewer, style);
@@ -257,7 +487,20 @@ public class ViewerColumnBuilder<T> {
 				tableViewer.getTable().getLayout(),
 				tableViewer.getTable().getParent().getLayout());
 
-		tableViewerColumn.setLabelProvider(createLabelProvider(colorProvider));
+		errorReporter = new ErrorReporter(header);
+		errorReporter.attachTo(tableViewerColumn.getColumn());
+		final CellLabelProvider labelProvider = createLabelProvider(colorProvider);
+		if (cellCache && labelProvider instanceof DecoratedLabelProvider<?>) {
+			((DecoratedLabelProvider<?>) labelProvider).setCellCache(CellCache.forViewer(tableViewer));
+		}
+		if (toolTipExecutor != null && labelProvider instanceof DecoratedLabelProvider<?>) {
+			((DecoratedLabelProvider<?>) labelProvider).setAsyncToolTip(AsyncToolTipSupport.forViewer(tableViewer),
+					toolTipExecutor, toolTipPlaceholder, toolTipExpiryMillis);
+		}
+		tableViewerColumn.setLabelProvider(labelProvider);
+		if (autoSizeSampleSize > 0) {
+			new ColumnAutoSizer(tableViewer, tableViewerColumn.getColumn(), autoSizeSampleSize);
+		}
 
 		if (editingSupportBuilder != null) {
 			try {
@@ -273,7 +516,16 @@ public class ViewerColumnBuilder<T> {
 
 	public TreeViewerColumn build(final TreeViewer treeViewer) {
 		if (colorProvider == null) {
-			colorProvider = new ColorProvider(treeViewer.getControl());
+			colorProvider = SharedColorProvider.forControl(treeViewer.getControl());
+		}
+		if (fontProvider == null && (fontDecorator != null || cellUpdater != null)) {
+			fontProvider = new FontProvider(treeViewer.getControl());
+		}
+		if (imageProvider == null && (imageDecorator != null || cellUpdater != null)) {
+			imageProvider = new ImageProvider(treeViewer.getControl());
+		}
+		if (overlayDecorator != null) {
+			overlayImageProvider = createOverlayImageProvider(treeViewer.getControl());
 		}
 
 		final TreeViewerColumn tableViewerColumn = new TreeViewerColumn(treeViewer, style);
@@ -283,7 +535,20 @@ public class ViewerColumnBuilder<T> {
 				treeViewer.getTree().getLayout(),
 				treeViewer.getTree().getParent().getLayout());
 
-		tableViewerColumn.setLabelProvider(createLabelProvider(colorProvider));
+		errorReporter = new ErrorReporter(header);
+		errorReporter.attachTo(tableViewerColumn.getColumn());
+		final CellLabelProvider labelProvider = createLabelProvider(colorProvider);
+		if (cellCache && labelProvider instanceof DecoratedLabelProvider<?>) {
+			((DecoratedLabelProvider<?>) labelProvider).setCellCache(CellCache.forViewer(treeViewer));
+		}
+		if (toolTipExecutor != null && labelProvider instanceof DecoratedLabelProvider<?>) {
+			((DecoratedLabelProvider<?>) labelProvider).setAsyncToolTip(AsyncToolTipSupport.forViewer(treeViewer),
+					toolTipExecutor, toolTipPlaceholder, toolTipExpiryMillis);
+		}
+		tableViewerColumn.setLabelProvider(labelProvider);
+		if (autoSizeSampleSize > 0) {
+			new ColumnAutoSizer(treeViewer, tableViewerColumn.getColumn(), autoSizeSampleSize);
+		}
 
 		if (editingSupportBuilder != null) {
 			try {
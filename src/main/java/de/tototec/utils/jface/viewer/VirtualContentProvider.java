@@ -0,0 +1,211 @@
+package de.tototec.utils.jface.viewer;
+
+import org.eclipse.jface.viewers.ILazyContentProvider;
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.swt.widgets.Table;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A lazy content provider for {@link TableViewer}s created with
+ * {@link org.eclipse.swt.SWT#VIRTUAL}, whose input is a {@link RowSource}.
+ * <p>
+ * Only the rows of visible items are requested from the row source, as long
+ * as the viewer has neither filters nor an active comparator. Otherwise, all
+ * rows are requested once per {@link #refresh()} to filter and sort them, but
+ * still only the visible ones are labeled.
+ * <p>
+ * As JFace does not apply filters and comparators to lazy content providers
+ * itself, changes of them must be followed by {@link #refresh()} instead of
+ * {@link TableViewer#refresh()}. {@link ColumnSorter} already does so.
+ * <p>
+ * Rows of a {@link PagedRowSource} are requested again, when their page was
+ * loaded. As filtering and sorting would load all pages, a paged row source
+ * is not filtered and sorted, but its query handler is notified, see
+ * {@link PagedRowSource#setQueryHandler(java.util.function.Consumer)}.
+ *
+ * @see TableViewerBuilder#withVirtual(RowSource)
+ */
+public class VirtualContentProvider<T> implements ILazyContentProvider {
+
+	private final Logger log = LoggerFactory.getLogger(VirtualContentProvider.class);
+
+	private TableViewer viewer;
+
+	private RowSource<T> rows;
+
+	/**
+	 * The filtered and sorted rows or <code>null</code> if the rows are shown
+	 * as provided by the row source.
+	 */
+	private Object[] view;
+
+	private boolean ignoringQueryLogged;
+
+	/**
+	 * Incremented whenever rows were loaded.
+	 */
+	private int loadCount;
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void inputChanged(final Viewer viewer, final Object oldInput, final Object newInput) {
+		if (oldInput instanceof PagedRowSource<?>) {
+			((PagedRowSource<?>) oldInput).setLoadListener(null);
+		}
+		this.viewer = (TableViewer) viewer;
+		this.rows = (RowSource<T>) newInput;
+		if (rows instanceof PagedRowSource<?>) {
+			((PagedRowSource<?>) rows).setLoadListener(this::rowsLoaded);
+		}
+		if (rows != null) {
+			updateView();
+		}
+	}
+
+	@Override
+	public void updateElement(final int index) {
+		if (rows != null && index < size()) {
+			viewer.replace(getElement(index), index);
+		}
+	}
+
+	/**
+	 * Clear the items of the given rows, so that they are requested again.
+	 */
+	private void rowsLoaded(final int from, final int to) {
+		loadCount++;
+		if (viewer == null || view != null || viewer.getControl().isDisposed()) {
+			return;
+		}
+		final Table table = viewer.getTable();
+		final int end = Math.min(to, table.getItemCount()) - 1;
+		if (from <= end) {
+			table.clear(from, end);
+		}
+	}
+
+	/**
+	 * Filter and sort the rows again, e.g. after the row source or the filters
+	 * of the viewer changed, and refresh the viewer.
+	 */
+	public void refresh() {
+		if (viewer == null) {
+			return;
+		}
+		if (rows != null) {
+			updateView();
+		}
+		viewer.refresh();
+	}
+
+	/**
+	 * @return All rows of the row source, unfiltered and unsorted, or none for
+	 *         a {@link PagedRowSource}, whose rows would all be loaded.
+	 */
+	Object[] getAllElements() {
+		if (rows instanceof PagedRowSource<?>) {
+			return new Object[0];
+		}
+		final int size = rows == null ? 0 : rows.size();
+		final Object[] elements = new Object[size];
+		for (int i = 0; i < size; i++) {
+			elements[i] = rows.get(i);
+		}
+		return elements;
+	}
+
+	/**
+	 * Refresh the given viewer, so that it filters and sorts its elements
+	 * again, also if it uses a {@link VirtualContentProvider} or a
+	 * {@link VirtualTreeContentProvider}.
+	 */
+	static void refreshViewer(final StructuredViewer viewer) {
+		if (viewer.getContentProvider() instanceof VirtualContentProvider<?>) {
+			((VirtualContentProvider<?>) viewer.getContentProvider()).refresh();
+		} else if (viewer.getContentProvider() instanceof VirtualTreeContentProvider<?>) {
+			((VirtualTreeContentProvider<?>) viewer.getContentProvider()).refresh();
+		} else {
+			viewer.refresh();
+		}
+	}
+
+	/**
+	 * @return The number of shown rows.
+	 */
+	public int size() {
+		return view != null ? view.length : rows == null ? 0 : rows.size();
+	}
+
+	/**
+	 * @return The shown row at the given index.
+	 */
+	public Object getElement(final int index) {
+		return view != null ? view[index] : rows.get(index);
+	}
+
+	/**
+	 * @return The number of times rows were loaded since creation, e.g. to
+	 *         find out whether loaded rows need to be measured again.
+	 */
+	int getLoadCount() {
+		return loadCount;
+	}
+
+	/**
+	 * @return The shown row at the given index or <code>null</code>, if it
+	 *         is not available without loading it, e.g. from a
+	 *         {@link PagedRowSource}.
+	 */
+	Object getLoadedElement(final int index) {
+		if (view == null && rows instanceof PagedRowSource<?>) {
+			return ((PagedRowSource<?>) rows).getLoaded(index);
+		}
+		return getElement(index);
+	}
+
+	private void updateView() {
+		final ViewerFilter[] filters = viewer.getFilters();
+		final ViewerComparator comparator = viewer.getComparator();
+		final boolean sorted = comparator != null
+				&& !(comparator instanceof ColumnSorter && ((ColumnSorter) comparator).isUnsorted());
+		if (rows instanceof PagedRowSource<?>) {
+			((PagedRowSource<?>) rows).queryChanged(viewer);
+		}
+		if (filters.length == 0 && !sorted) {
+			view = null;
+		} else if (rows instanceof PagedRowSource<?>) {
+			// would load all pages and filter and sort their placeholders
+			view = null;
+			if (!((PagedRowSource<?>) rows).hasQueryHandler() && !ignoringQueryLogged) {
+				ignoringQueryLogged = true;
+				log.warn("Ignoring filters and comparator of viewer with a PagedRowSource without query handler");
+			}
+		} else {
+			Object[] elements = getAllElements();
+			for (final ViewerFilter filter : filters) {
+				elements = filter.filter(viewer, rows, elements);
+			}
+			if (sorted) {
+				comparator.sort(viewer, elements);
+			}
+			view = elements;
+		}
+		viewer.setItemCount(size());
+	}
+
+	@Override
+	public void dispose() {
+		if (rows instanceof PagedRowSource<?>) {
+			((PagedRowSource<?>) rows).setLoadListener(null);
+		}
+		viewer = null;
+		rows = null;
+		view = null;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,197 @@
+package de.tototec.utils.jface.viewer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.ITreeViewerListener;
+import org.eclipse.jface.viewers.TreeExpansionEvent;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.jface.viewers.ViewerFilter;
+
+/**
+ * A lazy content provider for {@link TreeViewer}s created with
+ * {@link org.eclipse.swt.SWT#VIRTUAL}, whose input is a {@link TreeSource}.
+ * <p>
+ * Only the children of expanded nodes are requested from the tree source, and
+ * only the visible ones, as long as the viewer has neither filters nor an
+ * active comparator. Otherwise, all children of an expanded node are requested
+ * once per {@link #refresh()} to filter and sort them, but still only the
+ * visible ones are labeled. With filters, this also happens for visible nodes
+ * to count their children. The filtered and sorted children are kept for a
+ * bounded number of the most recently used nodes and dropped when their node
+ * is collapsed.
+ * <p>
+ * As JFace does not apply filters and comparators to lazy content providers
+ * itself, changes of them must be followed by {@link #refresh()} instead of
+ * {@link TreeViewer#refresh()}. {@link ColumnSorter} already does so.
+ *
+ * @see TreeViewerBuilder#withVirtual(TreeSource)
+ */
+public class VirtualTreeContentProvider<T> implements ILazyTreeContentProvider {
+
+	/**
+	 * The maximal number of nodes to keep the filtered and sorted children of.
+	 */
+	private static final int MAX_VIEWS = 1000;
+
+	private TreeViewer viewer;
+
+	private TreeSource<T> nodes;
+
+	/**
+	 * The filtered and sorted children by parent element, if the viewer has
+	 * filters or an active comparator, least recently used first.
+	 */
+	private final Map<Object, Object[]> views = new LinkedHashMap<Object, Object[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Object, Object[]> eldest) {
+			return size() > MAX_VIEWS;
+		}
+	};
+
+	private final ITreeViewerListener collapseListener = new ITreeViewerListener() {
+		@Override
+		public void treeExpanded(final TreeExpansionEvent event) {
+		}
+
+		@Override
+		public void treeCollapsed(final TreeExpansionEvent event) {
+			views.remove(event.getElement());
+		}
+	};
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void inputChanged(final Viewer viewer, final Object oldInput, final Object newInput) {
+		if (this.viewer != viewer) {
+			if (this.viewer != null) {
+				this.viewer.removeTreeListener(collapseListener);
+			}
+			if (viewer != null) {
+				((TreeViewer) viewer).addTreeListener(collapseListener);
+			}
+		}
+		this.viewer = (TreeViewer) viewer;
+		this.nodes = (TreeSource<T>) newInput;
+		views.clear();
+	}
+
+	@Override
+	public void updateElement(final Object parent, final int index) {
+		if (nodes == null) {
+			return;
+		}
+		final Object child;
+		if (isFiltered() || isSorted()) {
+			final Object[] view = view(parent);
+			if (index >= view.length) {
+				return;
+			}
+			child = view[index];
+		} else {
+			if (index >= nodes.childCount(node(parent))) {
+				return;
+			}
+			child = nodes.child(node(parent), index);
+		}
+		viewer.replace(parent, index, child);
+		updateChildCount(child, -1);
+	}
+
+	@Override
+	public void updateChildCount(final Object element, final int currentChildCount) {
+		if (nodes == null) {
+			return;
+		}
+		final int count = isFiltered() ? view(element).length : nodes.childCount(node(element));
+		if (count != currentChildCount) {
+			viewer.setChildCount(element, count);
+		}
+	}
+
+	@Override
+	public Object getParent(final Object element) {
+		if (nodes == null || element == nodes) {
+			return null;
+		}
+		return nodes.parent(node(element));
+	}
+
+	/**
+	 * Filter and sort the children again, e.g. after the tree source or the
+	 * filters of the viewer changed, and refresh the viewer.
+	 * <p>
+	 * The children of all nodes, which were filtered or sorted before, are
+	 * filtered and sorted at once, the others when they are shown next.
+	 */
+	public void refresh() {
+		if (viewer == null) {
+			return;
+		}
+		final Object[] parents = views.keySet().toArray();
+		views.clear();
+		if (nodes != null && (isFiltered() || isSorted())) {
+			for (final Object parent : parents) {
+				view(parent);
+			}
+		}
+		viewer.refresh();
+	}
+
+	/**
+	 * @return The filtered and sorted children of the given parent element.
+	 */
+	private Object[] view(final Object parent) {
+		Object[] view = views.get(parent);
+		if (view == null) {
+			final T node = node(parent);
+			final int size = nodes.childCount(node);
+			view = new Object[size];
+			for (int i = 0; i < size; i++) {
+				view[i] = nodes.child(node, i);
+			}
+			for (final ViewerFilter filter : viewer.getFilters()) {
+				view = filter.filter(viewer, parent, view);
+			}
+			if (isSorted()) {
+				viewer.getComparator().sort(viewer, view);
+			}
+			views.put(parent, view);
+		}
+		return view;
+	}
+
+	/**
+	 * @return The node of the given element, <code>null</code> for the input.
+	 */
+	@SuppressWarnings("unchecked")
+	private T node(final Object element) {
+		return element == nodes ? null : (T) element;
+	}
+
+	private boolean isFiltered() {
+		return viewer.getFilters().length > 0;
+	}
+
+	private boolean isSorted() {
+		final ViewerComparator comparator = viewer.getComparator();
+		return comparator != null
+				&& !(comparator instanceof ColumnSorter && ((ColumnSorter) comparator).isUnsorted());
+	}
+
+	@Override
+	public void dispose() {
+		if (viewer != null) {
+			viewer.removeTreeListener(collapseListener);
+		}
+		viewer = null;
+		nodes = null;
+		views.clear();
+	}
+
+}